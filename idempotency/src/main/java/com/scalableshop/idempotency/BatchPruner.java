@@ -0,0 +1,54 @@
+package com.scalableshop.idempotency;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Deletes expired rows of a table in small batches, each in its own transaction, so pruning never
+ * holds long locks on the table or builds one large transaction. Used to keep processed-event and
+ * dead-letter tables (and their indexes) sized to their retention period.
+ *
+ * <p>The caller supplies the transaction boundary, e.g. {@code work ->
+ * transactionTemplate.execute(status -> work.getAsInt())}, so this module stays free of Spring.
+ */
+public class BatchPruner {
+  private final int batchSize;
+  private final ToIntFunction<IntSupplier> inTransaction;
+
+  public BatchPruner(int batchSize, ToIntFunction<IntSupplier> inTransaction) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive");
+    }
+    this.batchSize = batchSize;
+    this.inTransaction = inTransaction;
+  }
+
+  /**
+   * Repeatedly finds up to one batch of expired row IDs and deletes them, until a batch comes back
+   * short.
+   *
+   * @param findExpiredIds returns up to the given number of IDs of expired rows
+   * @param deleteByIds deletes the rows with the given IDs
+   * @return the number of rows deleted
+   */
+  public <ID> int prune(IntFunction<List<ID>> findExpiredIds, Consumer<List<ID>> deleteByIds) {
+    int pruned = 0;
+    int deleted;
+    do {
+      deleted =
+          inTransaction.applyAsInt(
+              () -> {
+                List<ID> ids = findExpiredIds.apply(batchSize);
+                if (!ids.isEmpty()) {
+                  deleteByIds.accept(ids);
+                }
+                return ids.size();
+              });
+      pruned += deleted;
+    } while (deleted == batchSize);
+    return pruned;
+  }
+}
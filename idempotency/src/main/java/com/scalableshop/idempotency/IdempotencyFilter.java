@@ -0,0 +1,55 @@
+package com.scalableshop.idempotency;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory front for a processed-events table. Keys that are known to be processed are answered
+ * from a bounded recent-key cache without touching the database. Everything else must still go
+ * through the authoritative check, typically an INSERT ... ON CONFLICT DO NOTHING on the
+ * processed-events table.
+ *
+ * <p>Only mark a key as processed once the row recording it is committed (or was found to exist
+ * already). Marking it earlier would make a rolled-back event look processed.
+ *
+ * <p>There is deliberately no Bloom filter here: a Bloom filter can only prove that a key is
+ * absent, and an absent key has to be recorded in the table anyway. Its false positives would drop
+ * events that were never processed.
+ */
+public class IdempotencyFilter<K> {
+  private final RecentKeyCache<K> recentKeys;
+  private final AtomicLong shortCircuitCount = new AtomicLong();
+
+  public IdempotencyFilter(int capacity) {
+    this.recentKeys = new RecentKeyCache<>(capacity);
+  }
+
+  /** True if the key is known to be processed, i.e. the event can be skipped right away. */
+  public boolean isKnownDuplicate(K key) {
+    if (recentKeys.contains(key)) {
+      shortCircuitCount.incrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  public void markProcessed(K key) {
+    recentKeys.add(key);
+  }
+
+  /**
+   * Forgets every cached key, e.g. after the processed-events table was emptied, so the next check
+   * of each key goes to the table again.
+   */
+  public void clear() {
+    recentKeys.clear();
+  }
+
+  /** Number of duplicates answered from memory instead of the database. */
+  public long getShortCircuitCount() {
+    return shortCircuitCount.get();
+  }
+
+  public int size() {
+    return recentKeys.size();
+  }
+}
@@ -0,0 +1,48 @@
+package com.scalableshop.idempotency;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, thread-safe set of recently seen keys. Once full, adding a key evicts the least
+ * recently used one, so memory stays constant however many keys pass through.
+ */
+public class RecentKeyCache<K> {
+  private final int capacity;
+  private final Map<K, Boolean> keys;
+
+  public RecentKeyCache(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    this.capacity = capacity;
+    this.keys =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<K, Boolean> eldest) {
+            return size() > RecentKeyCache.this.capacity;
+          }
+        };
+  }
+
+  public synchronized boolean contains(K key) {
+    // get() rather than containsKey() so a hit refreshes the key's recency
+    return keys.get(key) != null;
+  }
+
+  public synchronized void add(K key) {
+    keys.put(key, Boolean.TRUE);
+  }
+
+  public synchronized void clear() {
+    keys.clear();
+  }
+
+  public synchronized int size() {
+    return keys.size();
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+}
@@ -0,0 +1,66 @@
+package com.scalableshop.idempotency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BatchPrunerTests {
+
+    @Test
+    void shouldDeleteInBatches_eachInItsOwnTransaction_untilABatchComesBackShort() {
+        List<Integer> rows = IntStream.range(0, 7).boxed().collect(Collectors.toList());
+        List<Integer> transactionSizes = new ArrayList<>();
+        BatchPruner pruner =
+                new BatchPruner(
+                        3,
+                        work -> {
+                            int deleted = work.getAsInt();
+                            transactionSizes.add(deleted);
+                            return deleted;
+                        });
+
+        int pruned =
+                pruner.prune(
+                        limit -> new ArrayList<>(rows.subList(0, Math.min(limit, rows.size()))),
+                        rows::removeAll);
+
+        assertThat(pruned).isEqualTo(7);
+        assertThat(rows).isEmpty();
+        assertThat(transactionSizes).containsExactly(3, 3, 1);
+    }
+
+    @Test
+    void shouldRunOneEmptyBatch_whenNothingIsExpired() {
+        List<Integer> transactionSizes = new ArrayList<>();
+        BatchPruner pruner =
+                new BatchPruner(
+                        3,
+                        work -> {
+                            int deleted = work.getAsInt();
+                            transactionSizes.add(deleted);
+                            return deleted;
+                        });
+
+        int pruned =
+                pruner.prune(
+                        limit -> List.<Integer>of(),
+                        ids -> {
+                            throw new AssertionError("Nothing to delete");
+                        });
+
+        assertThat(pruned).isZero();
+        assertThat(transactionSizes).containsExactly(0);
+    }
+
+    @Test
+    void shouldRejectNonPositiveBatchSize() {
+        assertThatThrownBy(() -> new BatchPruner(0, work -> work.getAsInt()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
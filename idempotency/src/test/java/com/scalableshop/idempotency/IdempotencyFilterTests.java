@@ -0,0 +1,59 @@
+package com.scalableshop.idempotency;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class IdempotencyFilterTests {
+
+    @Test
+    void shouldNotReportDuplicate_whenKeyWasNeverMarked() {
+        IdempotencyFilter<Long> filter = new IdempotencyFilter<>(10);
+
+        assertThat(filter.isKnownDuplicate(1L)).isFalse();
+        assertThat(filter.getShortCircuitCount()).isZero();
+    }
+
+    @Test
+    void shouldReportDuplicate_whenKeyWasMarkedProcessed() {
+        IdempotencyFilter<Long> filter = new IdempotencyFilter<>(10);
+
+        filter.markProcessed(1L);
+
+        assertThat(filter.isKnownDuplicate(1L)).isTrue();
+        assertThat(filter.getShortCircuitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedKey_whenCapacityIsReached() {
+        IdempotencyFilter<Long> filter = new IdempotencyFilter<>(2);
+
+        filter.markProcessed(1L);
+        filter.markProcessed(2L);
+        filter.isKnownDuplicate(1L); // 1 is now more recent than 2
+        filter.markProcessed(3L);
+
+        assertThat(filter.size()).isEqualTo(2);
+        assertThat(filter.isKnownDuplicate(1L)).isTrue();
+        assertThat(filter.isKnownDuplicate(2L)).isFalse();
+        assertThat(filter.isKnownDuplicate(3L)).isTrue();
+    }
+
+    @Test
+    void shouldNotReportDuplicate_whenFilterWasCleared() {
+        IdempotencyFilter<Long> filter = new IdempotencyFilter<>(10);
+        filter.markProcessed(1L);
+
+        filter.clear();
+
+        assertThat(filter.size()).isZero();
+        assertThat(filter.isKnownDuplicate(1L)).isFalse();
+    }
+
+    @Test
+    void shouldRejectNonPositiveCapacity() {
+        assertThatThrownBy(() -> new RecentKeyCache<Long>(0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -1,19 +1,29 @@
 package com.scalableshop.orderservice.controller;
 
-import com.scalableshop.orderservice.model.Order;
+import com.scalableshop.orderservice.dto.OrderHistoryPage;
+import com.scalableshop.orderservice.dto.OrderStatusChange;
+import com.scalableshop.orderservice.dto.OrderView;
 import com.scalableshop.orderservice.model.OrderItem;
+import com.scalableshop.orderservice.service.OrderCache;
 import com.scalableshop.orderservice.service.OrderService;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.util.List;
 
@@ -23,10 +33,14 @@ public class OrderController {
 
   private static final Logger log = LoggerFactory.getLogger(OrderController.class);
   private final OrderService orderService;
+  private final long streamTimeoutMillis;
 
   @Autowired
-  public OrderController(OrderService orderService) {
+  public OrderController(
+      OrderService orderService,
+      @Value("${order.events.stream-timeout-ms:3600000}") long streamTimeoutMillis) {
     this.orderService = orderService;
+    this.streamTimeoutMillis = streamTimeoutMillis;
     log.info("OrderController initialized.");
   }
 
@@ -54,7 +68,7 @@ public class OrderController {
    * [{"productId": 1, "productName": "Laptop", "unitPrice": 1500.00, "quantity": 1}]}
    */
   @PostMapping
-  public Mono<ResponseEntity<Order>> createOrder(@RequestBody OrderRequest request) {
+  public Mono<ResponseEntity<OrderView>> createOrder(@RequestBody OrderRequest request) {
     log.info("Received order creation request for customerId: {}", request.getCustomerId());
 
     List<OrderItem> orderItems =
@@ -79,7 +93,7 @@ public class OrderController {
 
     return orderService
         .createOrder(request.getCustomerId(), orderItems)
-        .map(order -> ResponseEntity.status(HttpStatus.CREATED).body(order))
+        .map(order -> ResponseEntity.status(HttpStatus.CREATED).body(OrderView.from(order)))
         .onErrorResume(
             e -> {
               log.error(
@@ -95,7 +109,7 @@ public class OrderController {
 
   /** Endpoint to get an order by ID. GET /api/orders/{orderId} */
   @GetMapping("/{orderId}")
-  public Mono<ResponseEntity<Order>> getOrderById(@PathVariable Long orderId) {
+  public Mono<ResponseEntity<OrderView>> getOrderById(@PathVariable Long orderId) {
     log.info("Received request to get order with ID: {}", orderId);
     return orderService
         .getOrderById(orderId)
@@ -109,4 +123,95 @@ public class OrderController {
                       .build());
             });
   }
+
+  /**
+   * Endpoint to list a customer's orders, newest first. Items are left out unless requested. GET
+   * /api/orders?customerId=123&after={nextCursor}&limit=20&includeItems=false
+   */
+  @GetMapping
+  public Mono<ResponseEntity<OrderHistoryPage<?>>> getOrderHistory(
+      @RequestParam Long customerId,
+      @RequestParam(required = false) String after,
+      @RequestParam(defaultValue = "20") int limit,
+      @RequestParam(defaultValue = "false") boolean includeItems) {
+    log.info("Received request to list orders of customerId: {}", customerId);
+    Mono<? extends OrderHistoryPage<?>> page =
+        includeItems
+            ? orderService.getOrderHistoryWithItems(customerId, after, limit)
+            : orderService.getOrderHistory(customerId, after, limit);
+    return page.<ResponseEntity<OrderHistoryPage<?>>>map(ResponseEntity::ok)
+        .onErrorResume(
+            IllegalArgumentException.class,
+            e ->
+                Mono.just(
+                    ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .header("X-Error-Message", e.getMessage())
+                        .build()));
+  }
+
+  /**
+   * Endpoint to stream status changes of an order as Server-Sent Events. GET
+   * /api/orders/{orderId}/events. Replaces polling of GET /api/orders/{orderId}.
+   */
+  @GetMapping(value = "/{orderId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public ResponseEntity<SseEmitter> streamOrderEvents(@PathVariable Long orderId) {
+    log.info("Received request to stream status of order with ID: {}", orderId);
+    if (!orderService.canOpenStatusStream()) {
+      return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+    return ResponseEntity.ok(
+        toEmitter(
+            orderService
+                .streamOrderStatus(orderId)
+                .onErrorResume(
+                    e -> {
+                      log.error("Error streaming order with ID {}: {}", orderId, e.getMessage());
+                      return Flux.empty();
+                    })));
+  }
+
+  /**
+   * Endpoint to stream status changes of all orders of a customer as Server-Sent Events. GET
+   * /api/orders/events?customerId=123
+   */
+  @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public ResponseEntity<SseEmitter> streamCustomerOrderEvents(@RequestParam Long customerId) {
+    log.info("Received request to stream order status of customerId: {}", customerId);
+    if (!orderService.canOpenStatusStream()) {
+      return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+    return ResponseEntity.ok(toEmitter(orderService.streamCustomerOrderStatus(customerId)));
+  }
+
+  // Streams get their own async timeout instead of spring.mvc.async.request-timeout, which is sized
+  // for ordinary requests. Idle streams are ended earlier by OrderStatusStream; clients reconnect.
+  private SseEmitter toEmitter(Flux<OrderStatusChange> changes) {
+    SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+    Disposable subscription =
+        changes.subscribe(
+            change -> {
+              try {
+                emitter.send(
+                    SseEmitter.event()
+                        .id(change.getOrderId() + "-" + change.getStatus())
+                        .name("order-status")
+                        .data(change, MediaType.APPLICATION_JSON));
+              } catch (IOException e) {
+                // The client went away; failing here cancels the subscription
+                throw new UncheckedIOException(e);
+              }
+            },
+            emitter::completeWithError,
+            emitter::complete);
+    emitter.onCompletion(subscription::dispose);
+    emitter.onTimeout(subscription::dispose);
+    emitter.onError(e -> subscription.dispose());
+    return emitter;
+  }
+
+  /** Endpoint to get order cache hit/miss counters. GET /api/orders/cache/stats */
+  @GetMapping("/cache/stats")
+  public ResponseEntity<OrderCache.Stats> getOrderCacheStats() {
+    return ResponseEntity.ok(orderService.getOrderCacheStats());
+  }
 }
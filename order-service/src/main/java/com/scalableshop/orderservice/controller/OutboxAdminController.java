@@ -0,0 +1,56 @@
+package com.scalableshop.orderservice.controller;
+
+import com.scalableshop.orderservice.model.OutboxDeadLetter;
+import com.scalableshop.orderservice.service.OutboxDeadLetterService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/outbox/dead-letters")
+public class OutboxAdminController {
+
+  private static final Logger log = LoggerFactory.getLogger(OutboxAdminController.class);
+  private final OutboxDeadLetterService outboxDeadLetterService;
+
+  public OutboxAdminController(OutboxDeadLetterService outboxDeadLetterService) {
+    this.outboxDeadLetterService = outboxDeadLetterService;
+  }
+
+  /** Lists dead-lettered outbox messages, newest first. GET /api/outbox/dead-letters */
+  @GetMapping
+  public Mono<ResponseEntity<List<OutboxDeadLetter>>> getDeadLetters(
+      @RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "50") int size) {
+    return Mono.fromCallable(
+        () -> ResponseEntity.ok(outboxDeadLetterService.getDeadLetters(page, size).getContent()));
+  }
+
+  /**
+   * Moves a dead-lettered message back into the outbox so the relayer publishes it again. POST
+   * /api/outbox/dead-letters/{id}/replay
+   */
+  @PostMapping("/{id}/replay")
+  public Mono<ResponseEntity<Map<String, UUID>>> replay(@PathVariable UUID id) {
+    log.info("Received request to replay dead-lettered outbox message with ID: {}", id);
+    return Mono.fromCallable(
+        () ->
+            outboxDeadLetterService
+                .replay(id)
+                .map(
+                    message ->
+                        ResponseEntity.status(HttpStatus.ACCEPTED)
+                            .body(Map.of("outboxMessageId", message.getId())))
+                .orElseGet(
+                    () ->
+                        ResponseEntity.status(HttpStatus.NOT_FOUND)
+                            .header("X-Error-Message", "Dead letter not found with ID: " + id)
+                            .build()));
+  }
+}
@@ -0,0 +1,53 @@
+package com.scalableshop.orderservice.dto;
+
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One page of a customer's order history, newest first. {@code nextCursor} is the opaque value to
+ * pass as {@code after} for the next page, or null on the last page.
+ *
+ * @param <T> {@link OrderSummary} by default, {@link OrderView} when items are requested
+ */
+@Value
+public class OrderHistoryPage<T> {
+  List<T> orders;
+  String nextCursor;
+
+  /** Keyset position: the (orderDate, id) of the last order on the previous page. */
+  @Value
+  public static class Cursor {
+    LocalDateTime orderDate;
+    Long id;
+
+    public static Cursor after(OrderSummary order) {
+      return new Cursor(order.getOrderDate(), order.getId());
+    }
+
+    public String encode() {
+      String raw = orderDate + "|" + id;
+      return Base64.getUrlEncoder()
+          .withoutPadding()
+          .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value was not produced by {@link #encode()}
+     */
+    public static Cursor decode(String value) {
+      try {
+        String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+        int separator = raw.indexOf('|');
+        return new Cursor(
+            LocalDateTime.parse(raw.substring(0, separator)),
+            Long.valueOf(raw.substring(separator + 1)));
+      } catch (RuntimeException e) {
+        throw new IllegalArgumentException("Invalid order history cursor: " + value, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package com.scalableshop.orderservice.dto;
+
+import com.scalableshop.orderservice.model.OrderStatus;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/** Immutable notification that an order moved to a new status, pushed to SSE subscribers. */
+@Value
+public class OrderStatusChange {
+  Long orderId;
+  Long customerId;
+  OrderStatus status;
+  LocalDateTime changedAt;
+}
@@ -0,0 +1,17 @@
+package com.scalableshop.orderservice.dto;
+
+import com.scalableshop.orderservice.model.OrderStatus;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/** Order without its items, as listed in a customer's order history. */
+@Value
+public class OrderSummary {
+  Long id;
+  Long customerId;
+  LocalDateTime orderDate;
+  OrderStatus status;
+  BigDecimal totalAmount;
+}
@@ -0,0 +1,55 @@
+package com.scalableshop.orderservice.dto;
+
+import com.scalableshop.orderservice.model.Order;
+import com.scalableshop.orderservice.model.OrderItem;
+import com.scalableshop.orderservice.model.OrderStatus;
+import lombok.Value;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Immutable read model of an order. Safe to cache and share between threads, unlike the JPA
+ * entity. Field names match the entity so the JSON returned by the API is unchanged.
+ */
+@Value
+public class OrderView {
+  Long id;
+  Long customerId;
+  LocalDateTime orderDate;
+  OrderStatus status;
+  BigDecimal totalAmount;
+  List<OrderItemView> orderItems;
+
+  @Value
+  public static class OrderItemView {
+    Long id;
+    Long productId;
+    String productName;
+    BigDecimal unitPrice;
+    Integer quantity;
+    BigDecimal subtotal;
+
+    public static OrderItemView from(OrderItem item) {
+      return new OrderItemView(
+          item.getId(),
+          item.getProductId(),
+          item.getProductName(),
+          item.getUnitPrice(),
+          item.getQuantity(),
+          item.getSubtotal());
+    }
+  }
+
+  /** Copies the order and its items, which must already be loaded. */
+  public static OrderView from(Order order) {
+    return new OrderView(
+        order.getId(),
+        order.getCustomerId(),
+        order.getOrderDate(),
+        order.getStatus(),
+        order.getTotalAmount(),
+        order.getOrderItems().stream().map(OrderItemView::from).toList());
+  }
+}
@@ -13,12 +13,25 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "customer_orders")
+// Fetch plan for views that need the items: one joined query instead of a query per order
+@NamedEntityGraph(
+    name = Order.WITH_ITEMS,
+    attributeNodes = {@NamedAttributeNode("orderItems")})
+@Table(
+    name = "customer_orders",
+    // Serves the keyset-paginated order history of a customer
+    indexes = {
+      @Index(
+          name = "idx_customer_orders_customer_date_id",
+          columnList = "customerId, orderDate, id")
+    })
 @Data
 @ToString(exclude = "orderItems")
 @NoArgsConstructor
 @AllArgsConstructor
 public class Order {
+  public static final String WITH_ITEMS = "Order.withItems";
+
   @Id
   @GeneratedValue(strategy = GenerationType.IDENTITY)
   private Long id;
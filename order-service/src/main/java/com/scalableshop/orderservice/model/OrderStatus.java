@@ -3,6 +3,7 @@ package com.scalableshop.orderservice.model;
 public enum OrderStatus {
   PENDING, // Order just created, awaiting stock check/payment
   CONFIRMED, // Stock reserved, payment successful
+  BACKORDERED, // Stock partly reserved, the rest backordered until restocked
   SHIPPED, // Order has been shipped
   DELIVERED, // Order delivered to customer
   CANCELLED, // Order cancelled by customer or system
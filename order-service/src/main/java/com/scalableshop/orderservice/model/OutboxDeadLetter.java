@@ -0,0 +1,69 @@
+package com.scalableshop.orderservice.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * An outbox message the relayer gave up on, either because it cannot be routed or because it kept
+ * failing. Kept out of outbox_messages so the relay scan only sees deliverable messages.
+ *
+ * <p>Later outbox messages of the same aggregate are held back while a dead letter exists for it,
+ * so events are never published out of order. Replaying the dead letter puts it back ahead of
+ * them; pruning it releases them.
+ */
+@Entity
+@Table(
+    name = "outbox_dead_letters",
+    indexes = {
+      @Index(name = "idx_outbox_dl_dead_lettered_at", columnList = "dead_lettered_at"),
+      // Supports the relayer's check for parked messages of an aggregate
+      @Index(name = "idx_outbox_dl_aggregate_id", columnList = "aggregate_id")
+    })
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxDeadLetter {
+
+  @Id private UUID id; // Same ID as the original outbox message
+
+  @Column(name = "aggregate_type", nullable = false)
+  private String aggregateType;
+
+  @Column(name = "aggregate_id", nullable = false)
+  private String aggregateId;
+
+  @Column(name = "event_type", nullable = false)
+  private String eventType;
+
+  @Column(name = "payload", columnDefinition = "TEXT", nullable = false)
+  private String payload;
+
+  @Column(name = "created_at", nullable = false)
+  private LocalDateTime createdAt;
+
+  @Column(name = "attempts", nullable = false)
+  private int attempts;
+
+  @Column(name = "last_error", length = 1000)
+  private String lastError;
+
+  @Column(name = "dead_lettered_at", nullable = false)
+  private LocalDateTime deadLetteredAt;
+
+  public OutboxDeadLetter(OutboxMessage message, LocalDateTime deadLetteredAt) {
+    this.id = message.getId();
+    this.aggregateType = message.getAggregateType();
+    this.aggregateId = message.getAggregateId();
+    this.eventType = message.getEventType();
+    this.payload = message.getPayload();
+    this.createdAt = message.getCreatedAt();
+    this.attempts = message.getAttempts();
+    this.lastError = message.getLastError();
+    this.deadLetteredAt = deadLetteredAt;
+  }
+}
@@ -9,12 +9,23 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "outbox_messages")
+@Table(
+    name = "outbox_messages",
+    indexes = {
+      // Supports the relayer's claim query: due messages read in creation order from the index
+      @Index(
+          name = "idx_outbox_created_at_next_attempt_at",
+          columnList = "created_at, next_attempt_at"),
+      // Supports the claim query's check for earlier messages of the same aggregate
+      @Index(name = "idx_outbox_aggregate_created_at", columnList = "aggregate_id, created_at")
+    })
 @Getter
 @NoArgsConstructor
 @AllArgsConstructor
 public class OutboxMessage {
 
+  private static final int MAX_ERROR_LENGTH = 1000;
+
   @Id
   @GeneratedValue(strategy = GenerationType.UUID) // Using UUID for robust unique IDs
   private UUID id;
@@ -34,10 +45,44 @@ public class OutboxMessage {
   @Column(name = "created_at", nullable = false)
   private LocalDateTime createdAt = LocalDateTime.now(); // Initialized at field level
 
+  // Defaults in the column definitions let ddl-auto add the columns to a populated table
+  @Column(name = "attempts", columnDefinition = "integer default 0", nullable = false)
+  private int attempts;
+
+  @Column(
+      name = "next_attempt_at",
+      columnDefinition = "timestamp(6) default current_timestamp",
+      nullable = false)
+  private LocalDateTime nextAttemptAt = createdAt; // Due immediately
+
+  @Column(name = "last_error", length = MAX_ERROR_LENGTH)
+  private String lastError;
+
   public OutboxMessage(String aggregateType, String aggregateId, String eventType, String payload) {
     this.aggregateType = aggregateType;
     this.aggregateId = aggregateId;
     this.eventType = eventType;
     this.payload = payload;
   }
+
+  /** A message put back into the outbox, keeping its place in its aggregate's order. */
+  public OutboxMessage(
+      String aggregateType,
+      String aggregateId,
+      String eventType,
+      String payload,
+      LocalDateTime createdAt) {
+    this(aggregateType, aggregateId, eventType, payload);
+    this.createdAt = createdAt;
+    this.nextAttemptAt = LocalDateTime.now();
+  }
+
+  public void recordFailedAttempt(String error, LocalDateTime nextAttemptAt) {
+    this.attempts++;
+    this.nextAttemptAt = nextAttemptAt;
+    this.lastError =
+        error != null && error.length() > MAX_ERROR_LENGTH
+            ? error.substring(0, MAX_ERROR_LENGTH)
+            : error;
+  }
 }
@@ -17,6 +17,10 @@ import java.time.LocalDateTime;
       @UniqueConstraint(
           columnNames = {"orderId", "eventType"},
           name = "UK_order_event_type")
+    },
+    // Supports pruning of rows older than the retention period
+    indexes = {
+      @Index(name = "idx_processed_inventory_events_processed_at", columnList = "processedAt")
     })
 public class ProcessedInventoryEvent {
   @Id
@@ -1,8 +1,67 @@
 package com.scalableshop.orderservice.repository;
 
+import com.scalableshop.orderservice.dto.OrderSummary;
 import com.scalableshop.orderservice.model.Order;
+import com.scalableshop.orderservice.model.OrderStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
-public interface OrderRepository extends JpaRepository<Order, Long> {}
+public interface OrderRepository extends JpaRepository<Order, Long> {
+
+  // Guarded status update: a single statement that only touches orders currently in one of the
+  // expected statuses. The returned row count tells the caller which transitions happened.
+  @Modifying
+  @Query("UPDATE Order o SET o.status = :status WHERE o.id IN :ids AND o.status IN :expected")
+  int updateStatus(
+      @Param("ids") Collection<Long> ids,
+      @Param("expected") Collection<OrderStatus> expected,
+      @Param("status") OrderStatus status);
+
+  // Keyset pagination over the (customerId, orderDate, id) index, newest first. Each page seeks
+  // straight to its position instead of skipping the rows of the previous pages.
+  @Query(
+      "SELECT new com.scalableshop.orderservice.dto.OrderSummary("
+          + "o.id, o.customerId, o.orderDate, o.status, o.totalAmount) "
+          + "FROM Order o WHERE o.customerId = :customerId "
+          + "ORDER BY o.orderDate DESC, o.id DESC")
+  List<OrderSummary> findFirstPageOfCustomer(
+      @Param("customerId") Long customerId, Pageable pageable);
+
+  @Query(
+      "SELECT new com.scalableshop.orderservice.dto.OrderSummary("
+          + "o.id, o.customerId, o.orderDate, o.status, o.totalAmount) "
+          + "FROM Order o WHERE o.customerId = :customerId "
+          + "AND (o.orderDate < :afterDate OR (o.orderDate = :afterDate AND o.id < :afterId)) "
+          + "ORDER BY o.orderDate DESC, o.id DESC")
+  List<OrderSummary> findPageOfCustomerAfter(
+      @Param("customerId") Long customerId,
+      @Param("afterDate") LocalDateTime afterDate,
+      @Param("afterId") Long afterId,
+      Pageable pageable);
+
+  @Query("SELECT o.id FROM Order o WHERE o.id IN :ids AND o.status = :status")
+  List<Long> findIdsWithStatus(
+      @Param("ids") Collection<Long> ids, @Param("status") OrderStatus status);
+
+  @Query("SELECT o.status FROM Order o WHERE o.id = :id")
+  Optional<OrderStatus> findStatusById(@Param("id") Long id);
+
+  // Loads the order together with its items in one query
+  @EntityGraph(Order.WITH_ITEMS)
+  Optional<Order> findWithItemsById(Long id);
+
+  // Loads the orders together with their items in one query, for a page of the order history
+  @EntityGraph(Order.WITH_ITEMS)
+  List<Order> findWithItemsByIdIn(Collection<Long> ids);
+}
@@ -0,0 +1,19 @@
+package com.scalableshop.orderservice.repository;
+
+import com.scalableshop.orderservice.model.OutboxDeadLetter;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface OutboxDeadLetterRepository extends JpaRepository<OutboxDeadLetter, UUID> {
+
+  @Query("SELECT d.id FROM OutboxDeadLetter d WHERE d.deadLetteredAt < :cutoff")
+  List<UUID> findIdsDeadLetteredBefore(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+}
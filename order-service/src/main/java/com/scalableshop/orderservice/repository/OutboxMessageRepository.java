@@ -1,17 +1,41 @@
 package com.scalableshop.orderservice.repository;
 
 import com.scalableshop.orderservice.model.OutboxMessage;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
 
 @Repository
 public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, UUID> {
 
-    // Method to find a batch of messages to publish.
-    // We'll typically order by createdAt to maintain message order and limit for batching.
-    // This simple query will fetch all, but for a real system, you'd add status/limit/pagination.
-    List<OutboxMessage> findTop100ByOrderByCreatedAtAsc(); // Example: fetch top 100 oldest messages
-}
\ No newline at end of file
+    // Claims a batch of the oldest messages for this relayer instance.
+    // PESSIMISTIC_WRITE with a lock timeout of -2 (LockOptions.SKIP_LOCKED) is rendered by
+    // Hibernate as "FOR UPDATE SKIP LOCKED" on PostgreSQL, so concurrent relayers skip rows another
+    // instance has already claimed instead of publishing them again. Dialects without SKIP LOCKED
+    // support (e.g. H2 in tests) fall back to a plain "FOR UPDATE".
+    // The rows stay locked until the surrounding transaction commits.
+    // Only messages that are due are claimed; failed ones wait for their nextAttemptAt.
+    // Messages stay in order per aggregate: only the oldest message of an aggregate is claimed, so
+    // a later one waits while an earlier one is in flight on another instance, waits for a retry
+    // or sits in the dead-letter table.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query(
+            "SELECT m FROM OutboxMessage m WHERE m.nextAttemptAt <= :now"
+                    + " AND NOT EXISTS (SELECT e.id FROM OutboxMessage e"
+                    + " WHERE e.aggregateId = m.aggregateId AND e.createdAt < m.createdAt)"
+                    + " AND NOT EXISTS (SELECT d.id FROM OutboxDeadLetter d"
+                    + " WHERE d.aggregateId = m.aggregateId)"
+                    + " ORDER BY m.createdAt ASC")
+    List<OutboxMessage> claimBatch(@Param("now") LocalDateTime now, Pageable pageable);
+}
@@ -1,8 +1,33 @@
 package com.scalableshop.orderservice.repository;
 
 import com.scalableshop.orderservice.model.ProcessedInventoryEvent;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 @Repository
-public interface ProcessedInventoryEventRepository extends JpaRepository<ProcessedInventoryEvent, String> {}
+public interface ProcessedInventoryEventRepository extends JpaRepository<ProcessedInventoryEvent, Long> {
+
+  // Authoritative idempotency check. Returns 1 if the event was recorded, 0 if it already was.
+  // A duplicate is reported through the row count instead of a constraint violation, so it does
+  // not mark the surrounding transaction for rollback.
+  @Modifying
+  @Query(
+      value =
+          "INSERT INTO processed_inventory_events (order_id, event_type, processed_at) "
+              + "VALUES (:orderId, :eventType, :processedAt) ON CONFLICT DO NOTHING",
+      nativeQuery = true)
+  int insertIfAbsent(
+      @Param("orderId") Long orderId,
+      @Param("eventType") String eventType,
+      @Param("processedAt") LocalDateTime processedAt);
+
+  @Query("SELECT e.id FROM ProcessedInventoryEvent e WHERE e.processedAt < :cutoff")
+  List<Long> findIdsProcessedBefore(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+}
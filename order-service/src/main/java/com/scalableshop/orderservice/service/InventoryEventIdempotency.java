@@ -0,0 +1,66 @@
+package com.scalableshop.orderservice.service;
+
+import com.scalableshop.idempotency.IdempotencyFilter;
+import com.scalableshop.orderservice.repository.ProcessedInventoryEventRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+
+/**
+ * Idempotency for inventory events: a recent-ID cache answers most redeliveries from memory, and
+ * INSERT ... ON CONFLICT DO NOTHING into processed_inventory_events is the authoritative check.
+ * Neither path throws on a duplicate.
+ */
+@Component
+public class InventoryEventIdempotency {
+
+  private final ProcessedInventoryEventRepository processedInventoryEventRepository;
+  private final IdempotencyFilter<String> idempotencyFilter;
+
+  public InventoryEventIdempotency(
+      ProcessedInventoryEventRepository processedInventoryEventRepository,
+      @Value("${idempotency.recent-ids.capacity:100000}") int capacity) {
+    this.processedInventoryEventRepository = processedInventoryEventRepository;
+    this.idempotencyFilter = new IdempotencyFilter<>(capacity);
+  }
+
+  /**
+   * Records the event as processed in the current transaction.
+   *
+   * @return true if the event is new, false if it was processed before
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public boolean recordIfNew(Long orderId, String eventType) {
+    String key = orderId + ":" + eventType;
+    if (idempotencyFilter.isKnownDuplicate(key)) {
+      return false;
+    }
+
+    boolean recorded =
+        processedInventoryEventRepository.insertIfAbsent(orderId, eventType, LocalDateTime.now())
+            == 1;
+    if (recorded) {
+      // Remember the key only once the processed row is committed
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              idempotencyFilter.markProcessed(key);
+            }
+          });
+    } else {
+      // ON CONFLICT waits for a concurrent inserter to finish, so the existing row is committed
+      idempotencyFilter.markProcessed(key);
+    }
+    return recorded;
+  }
+
+  public long getShortCircuitCount() {
+    return idempotencyFilter.getShortCircuitCount();
+  }
+}
@@ -0,0 +1,118 @@
+package com.scalableshop.orderservice.service;
+
+import com.scalableshop.orderservice.dto.OrderView;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded in-process LRU cache of {@link OrderView}s keyed by order ID.
+ *
+ * <p>Status transitions invalidate the affected orders once their transaction commits. A reader
+ * that missed the cache may still be loading the old state at that moment, so every invalidation
+ * also bumps a per-stripe generation, and a loaded view is only stored if its stripe's generation
+ * did not move while it was being read.
+ */
+@Component
+public class OrderCache {
+
+  private static final int GENERATION_STRIPES = 64;
+
+  private final int capacity;
+  private final Map<Long, OrderView> orders;
+  private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public OrderCache(@Value("${order.cache.capacity:10000}") int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    this.capacity = capacity;
+    this.orders =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Long, OrderView> eldest) {
+            return size() > OrderCache.this.capacity;
+          }
+        };
+  }
+
+  /** Returns the cached view, or loads it and caches it unless the order changed meanwhile. */
+  public Optional<OrderView> get(Long orderId, Supplier<Optional<OrderView>> loader) {
+    OrderView cached;
+    synchronized (this) {
+      cached = orders.get(orderId);
+    }
+    if (cached != null) {
+      hits.increment();
+      return Optional.of(cached);
+    }
+
+    misses.increment();
+    long generation = generations.get(stripe(orderId));
+    Optional<OrderView> loaded = loader.get();
+    loaded.ifPresent(
+        view -> {
+          synchronized (this) {
+            if (generations.get(stripe(orderId)) == generation) {
+              orders.put(orderId, view);
+            }
+          }
+        });
+    return loaded;
+  }
+
+  /**
+   * Evicts the given orders. Inside a transaction the eviction is repeated after commit, so no
+   * reader can cache the pre-commit state once the new one is visible.
+   */
+  public void invalidateAll(Collection<Long> orderIds) {
+    evict(orderIds);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              evict(orderIds);
+            }
+          });
+    }
+  }
+
+  public Stats getStats() {
+    synchronized (this) {
+      return new Stats(hits.sum(), misses.sum(), orders.size(), capacity);
+    }
+  }
+
+  private void evict(Collection<Long> orderIds) {
+    synchronized (this) {
+      for (Long orderId : orderIds) {
+        generations.incrementAndGet(stripe(orderId));
+        orders.remove(orderId);
+      }
+    }
+  }
+
+  private static int stripe(Long orderId) {
+    return (Long.hashCode(orderId) & Integer.MAX_VALUE) % GENERATION_STRIPES;
+  }
+
+  @lombok.Value
+  public static class Stats {
+    long hits;
+    long misses;
+    int size;
+    int capacity;
+  }
+}
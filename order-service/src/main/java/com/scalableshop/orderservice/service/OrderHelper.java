@@ -2,20 +2,27 @@ package com.scalableshop.orderservice.service;
 
 import com.scalableshop.events.event.StockReservationFailedEvent;
 import com.scalableshop.events.event.StockReservedEvent;
+import com.scalableshop.orderservice.dto.OrderStatusChange;
 import com.scalableshop.orderservice.model.Order;
+import com.scalableshop.orderservice.model.OrderItem;
 import com.scalableshop.orderservice.model.OrderStatus;
-import com.scalableshop.orderservice.model.ProcessedInventoryEvent;
 import com.scalableshop.orderservice.repository.OrderRepository;
-import com.scalableshop.orderservice.repository.ProcessedInventoryEventRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.Optional;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Component
 public class OrderHelper {
@@ -23,14 +30,20 @@ public class OrderHelper {
   private static final Logger log = LoggerFactory.getLogger(OrderHelper.class);
 
   private final OrderRepository orderRepository;
-  private final ProcessedInventoryEventRepository processedInventoryEventRepository;
+  private final InventoryEventIdempotency inventoryEventIdempotency;
+  private final OrderStatusTransitions orderStatusTransitions;
+  private final OrderStatusStream orderStatusStream;
 
   @Autowired
   public OrderHelper(
       OrderRepository orderRepository,
-      ProcessedInventoryEventRepository processedInventoryEventRepository) {
+      InventoryEventIdempotency inventoryEventIdempotency,
+      OrderStatusTransitions orderStatusTransitions,
+      OrderStatusStream orderStatusStream) {
     this.orderRepository = orderRepository;
-    this.processedInventoryEventRepository = processedInventoryEventRepository;
+    this.inventoryEventIdempotency = inventoryEventIdempotency;
+    this.orderStatusTransitions = orderStatusTransitions;
+    this.orderStatusStream = orderStatusStream;
   }
 
   @Transactional
@@ -41,44 +54,36 @@ public class OrderHelper {
         "OrderHelper: Attempting to confirm order for Order ID: {} with event ID: {}",
         orderId,
         eventId);
+    if (!isComplete(event)) {
+      confirmShortOrder(event);
+      return;
+    }
 
     try {
-      // Idempotency check: Record this event as processed
-      // DataIntegrityViolationException will occur if (orderId, eventType) already exists
-      processedInventoryEventRepository.save(
-          new ProcessedInventoryEvent(orderId, eventType, LocalDateTime.now()));
+      // Idempotency check: Record this event as processed.
+      // Duplicates are reported by the return value, without a constraint violation.
+      if (!inventoryEventIdempotency.recordIfNew(orderId, eventType)) {
+        log.warn(
+            "OrderHelper: StockReservedEvent for Order ID: {} (Event Type: {}) has already been processed. Skipping.",
+            orderId,
+            eventType);
+        // No need to re-process or re-publish in case of duplicate event
+        return;
+      }
       log.debug(
           "OrderHelper: ProcessedInventoryEvent recorded for Order ID: {}, Event Type: {}",
           orderId,
           eventType);
 
-      // Find the order and update its status
-      Optional<Order> optionalOrder = orderRepository.findById(orderId);
-      if (optionalOrder.isPresent()) {
-        Order order = optionalOrder.get();
-        // Update only if current status is PENDING
-        if (order.getStatus() == OrderStatus.PENDING) {
-          order.setStatus(OrderStatus.CONFIRMED);
-          orderRepository.save(order);
-          log.info("OrderHelper: Order ID: {} status updated to CONFIRMED.", orderId);
-          // TODO: Publish OrderConfirmedEvent or PaymentInitiatedEvent
-        } else {
-          log.warn(
-              "OrderHelper: Order ID: {} is not in PENDING status (current: {}). Skipping status update.",
-              orderId,
-              order.getStatus());
-        }
+      // Guarded UPDATE: only a PENDING order moves to CONFIRMED
+      if (orderStatusTransitions.transition(orderId, OrderStatus.CONFIRMED)) {
+        log.info("OrderHelper: Order ID: {} status updated to CONFIRMED.", orderId);
+        orderStatusStream.publishAfterCommit(
+            List.of(statusChange(orderId, event.getCustomerId(), OrderStatus.CONFIRMED)));
+        // TODO: Publish OrderConfirmedEvent or PaymentInitiatedEvent
       } else {
-        log.warn(
-            "OrderHelper: Order ID: {} not found in order service. Cannot update status after stock reservation.",
-            orderId);
+        logSkippedTransition(orderId, "stock reservation");
       }
-    } catch (DataIntegrityViolationException e) {
-      log.warn(
-          "OrderHelper: StockReservedEvent for Order ID: {} (Event Type: {}) has already been processed or is being processed concurrently. Skipping.",
-          orderId,
-          eventType);
-      // No need to re-process or re-publish in case of duplicate event
     } catch (Exception e) {
       log.error(
           "OrderHelper: An unexpected error occurred while confirming order for Order ID: {}: {}",
@@ -100,42 +105,30 @@ public class OrderHelper {
         event.getReason());
 
     try {
-      // Idempotency check: Record this event as processed
-      // DataIntegrityViolationException will occur if (orderId, eventType) already exists
-      processedInventoryEventRepository.save(
-          new ProcessedInventoryEvent(orderId, eventType, LocalDateTime.now()));
+      // Idempotency check: Record this event as processed.
+      // Duplicates are reported by the return value, without a constraint violation.
+      if (!inventoryEventIdempotency.recordIfNew(orderId, eventType)) {
+        log.warn(
+            "OrderHelper: StockReservationFailedEvent for Order ID: {} (Event Type: {}) has already been processed. Skipping.",
+            orderId,
+            eventType);
+        // No need to re-process or re-publish in case of duplicate event
+        return;
+      }
       log.debug(
           "OrderHelper: ProcessedInventoryEvent recorded for Order ID: {}, Event Type: {}",
           orderId,
           eventType);
 
-      // Find the order and update its status
-      Optional<Order> optionalOrder = orderRepository.findById(orderId);
-      if (optionalOrder.isPresent()) {
-        Order order = optionalOrder.get();
-        // Update only if current status is PENDING
-        if (order.getStatus() == OrderStatus.PENDING) {
-          order.setStatus(OrderStatus.FAILED);
-          orderRepository.save(order);
-          log.info("OrderHelper: Order ID: {} status updated to FAILED.", orderId);
-          // TODO: Publish OrderCancelledEvent or PaymentRefundInitiatedEvent
-        } else {
-          log.warn(
-              "OrderHelper: Order ID: {} is not in PENDING status (current: {}). Skipping status update.",
-              orderId,
-              order.getStatus());
-        }
+      // Guarded UPDATE: only a PENDING order moves to FAILED
+      if (orderStatusTransitions.transition(orderId, OrderStatus.FAILED)) {
+        log.info("OrderHelper: Order ID: {} status updated to FAILED.", orderId);
+        orderStatusStream.publishAfterCommit(
+            List.of(statusChange(orderId, event.getCustomerId(), OrderStatus.FAILED)));
+        // TODO: Publish OrderCancelledEvent or PaymentRefundInitiatedEvent
       } else {
-        log.warn(
-            "OrderHelper: Order ID: {} not found in order service. Cannot update status after stock reservation failure.",
-            orderId);
+        logSkippedTransition(orderId, "stock reservation failure");
       }
-    } catch (DataIntegrityViolationException e) {
-      log.warn(
-          "OrderHelper: StockReservationFailedEvent for Order ID: {} (Event Type: {}) has already been processed or is being processed concurrently. Skipping.",
-          orderId,
-          eventType);
-      // No need to re-process or re-publish in case of duplicate event
     } catch (Exception e) {
       log.error(
           "OrderHelper: An unexpected error occurred while failing order for Order ID: {}: {}",
@@ -145,4 +138,192 @@ public class OrderHelper {
       // Handle other exceptions if necessary
     }
   }
+
+  /**
+   * Confirms a batch of orders in one transaction. Already processed events are skipped, and all
+   * remaining PENDING orders reserved in full move to CONFIRMED with a single guarded UPDATE.
+   * Orders not reserved in full are handled one by one: a PARTIAL order is confirmed with only its
+   * reserved units, a BACKORDERED one moves to BACKORDERED.
+   *
+   * @return the number of orders whose status changed
+   */
+  @Transactional
+  public int confirmOrders(List<StockReservedEvent> events) {
+    Map<Long, Long> customerIdsByOrderId = new LinkedHashMap<>();
+    Map<Long, StockReservedEvent> shortEventsByOrderId = new LinkedHashMap<>();
+    for (StockReservedEvent event : events) {
+      if (isComplete(event)) {
+        customerIdsByOrderId.putIfAbsent(event.getOrderId(), event.getCustomerId());
+      } else {
+        shortEventsByOrderId.putIfAbsent(event.getOrderId(), event);
+      }
+    }
+    int updated =
+        transitionPendingOrders(customerIdsByOrderId, "StockReservedEvent", OrderStatus.CONFIRMED);
+    for (StockReservedEvent event : shortEventsByOrderId.values()) {
+      if (confirmShortOrder(event)) {
+        updated++;
+      }
+    }
+    return updated;
+  }
+
+  /**
+   * Fails a batch of orders in one transaction. See {@link #confirmOrders(List)}.
+   *
+   * @return the number of orders whose status changed
+   */
+  @Transactional
+  public int failOrders(List<StockReservationFailedEvent> events) {
+    Map<Long, Long> customerIdsByOrderId = new LinkedHashMap<>();
+    events.forEach(e -> customerIdsByOrderId.putIfAbsent(e.getOrderId(), e.getCustomerId()));
+    return transitionPendingOrders(
+        customerIdsByOrderId, "StockReservationFailedEvent", OrderStatus.FAILED);
+  }
+
+  // Events from before fulfilment was reported carry none and were always reserved in full
+  private static boolean isComplete(StockReservedEvent event) {
+    return event.getFulfilment() == null
+        || event.getFulfilment() == StockReservedEvent.Fulfilment.COMPLETE;
+  }
+
+  /**
+   * Moves a PENDING order that was not reserved in full on. A PARTIAL order is confirmed with its
+   * items cut down to the reserved units; a BACKORDERED order keeps its items and moves to
+   * BACKORDERED until the rest is restocked.
+   *
+   * @return true if the order's status changed
+   */
+  private boolean confirmShortOrder(StockReservedEvent event) {
+    Long orderId = event.getOrderId();
+    if (!inventoryEventIdempotency.recordIfNew(orderId, "StockReservedEvent")) {
+      log.warn(
+          "OrderHelper: StockReservedEvent for Order ID: {} has already been processed. Skipping.",
+          orderId);
+      return false;
+    }
+    boolean partial = event.getFulfilment() == StockReservedEvent.Fulfilment.PARTIAL;
+    OrderStatus targetStatus = partial ? OrderStatus.CONFIRMED : OrderStatus.BACKORDERED;
+    // Guarded UPDATE first, so the items of an order that is no longer PENDING stay as they are
+    if (!orderStatusTransitions.transition(orderId, targetStatus)) {
+      logSkippedTransition(orderId, "stock reservation");
+      return false;
+    }
+    if (partial) {
+      orderRepository
+          .findWithItemsById(orderId)
+          .ifPresent(order -> keepReservedUnits(order, event.getReservedItems()));
+    }
+    log.info(
+        "OrderHelper: Order ID: {} status updated to {} ({} fulfilment).",
+        orderId,
+        targetStatus,
+        event.getFulfilment());
+    orderStatusStream.publishAfterCommit(
+        List.of(statusChange(orderId, event.getCustomerId(), targetStatus)));
+    return true;
+  }
+
+  // Cuts the items down to the units reserved per product, removes items of which nothing was
+  // reserved and recomputes the total. The changes are flushed when the transaction commits.
+  private static void keepReservedUnits(
+      Order order, List<StockReservedEvent.ReservedItem> reservedItems) {
+    Map<Long, Integer> unitsLeftByProduct = new HashMap<>();
+    reservedItems.forEach(
+        item ->
+            unitsLeftByProduct.merge(
+                item.getProductId(), item.getQuantityReserved(), Integer::sum));
+    BigDecimal totalAmount = BigDecimal.ZERO;
+    Iterator<OrderItem> items = order.getOrderItems().iterator();
+    while (items.hasNext()) {
+      OrderItem item = items.next();
+      int unitsLeft = unitsLeftByProduct.getOrDefault(item.getProductId(), 0);
+      int quantity = Math.min(item.getQuantity(), unitsLeft);
+      unitsLeftByProduct.put(item.getProductId(), unitsLeft - quantity);
+      if (quantity == 0) {
+        items.remove();
+        continue;
+      }
+      item.setQuantity(quantity);
+      if (item.getUnitPrice() != null) {
+        item.setSubtotal(item.getUnitPrice().multiply(BigDecimal.valueOf(quantity)));
+      }
+      totalAmount = totalAmount.add(item.getSubtotal());
+    }
+    order.setTotalAmount(totalAmount);
+  }
+
+  // Only called when the guarded update touched no row, to tell the two reasons apart in the log
+  private void logSkippedTransition(Long orderId, String cause) {
+    orderRepository
+        .findStatusById(orderId)
+        .ifPresentOrElse(
+            status ->
+                log.warn(
+                    "OrderHelper: Order ID: {} is not in PENDING status (current: {}). Skipping status update.",
+                    orderId,
+                    status),
+            () ->
+                log.warn(
+                    "OrderHelper: Order ID: {} not found in order service. Cannot update status after {}.",
+                    orderId,
+                    cause));
+  }
+
+  private int transitionPendingOrders(
+      Map<Long, Long> customerIdsByOrderId, String eventType, OrderStatus targetStatus) {
+    Set<Long> orderIds = customerIdsByOrderId.keySet();
+    // Idempotency check per order: known duplicates are answered from memory, the rest by
+    // INSERT ... ON CONFLICT DO NOTHING, so a duplicate never aborts the batch
+    Set<Long> newOrderIds = new LinkedHashSet<>();
+    for (Long orderId : orderIds) {
+      if (inventoryEventIdempotency.recordIfNew(orderId, eventType)) {
+        newOrderIds.add(orderId);
+      }
+    }
+    if (newOrderIds.size() < orderIds.size()) {
+      log.warn(
+          "OrderHelper: {} of {} {} event(s) in batch already processed. Skipping them.",
+          orderIds.size() - newOrderIds.size(),
+          orderIds.size(),
+          eventType);
+    }
+    if (newOrderIds.isEmpty()) {
+      return 0;
+    }
+
+    int updated = orderStatusTransitions.transitionAll(newOrderIds, targetStatus);
+    publishStatusChanges(newOrderIds, updated, customerIdsByOrderId, targetStatus);
+    log.info(
+        "OrderHelper: {} of {} order(s) updated to {} for {} batch.",
+        updated,
+        newOrderIds.size(),
+        targetStatus,
+        eventType);
+    return updated;
+  }
+
+  private void publishStatusChanges(
+      Set<Long> candidateIds,
+      int updated,
+      Map<Long, Long> customerIdsByOrderId,
+      OrderStatus targetStatus) {
+    if (updated == 0) {
+      return;
+    }
+    // The row count only says how many orders moved; look up which ones when it was not all
+    Collection<Long> changedIds =
+        updated == candidateIds.size()
+            ? candidateIds
+            : orderRepository.findIdsWithStatus(candidateIds, targetStatus);
+    orderStatusStream.publishAfterCommit(
+        changedIds.stream()
+            .map(id -> statusChange(id, customerIdsByOrderId.get(id), targetStatus))
+            .toList());
+  }
+
+  private static OrderStatusChange statusChange(
+      Long orderId, Long customerId, OrderStatus status) {
+    return new OrderStatusChange(orderId, customerId, status, LocalDateTime.now());
+  }
 }
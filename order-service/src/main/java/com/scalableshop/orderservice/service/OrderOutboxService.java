@@ -19,11 +19,15 @@ public class OrderOutboxService {
   private static final Logger log = LoggerFactory.getLogger(OrderOutboxService.class);
   private final OutboxMessageRepository outboxMessageRepository;
   private final ObjectMapper objectMapper;
+  private final OutboxRelaySignal outboxRelaySignal;
 
   public OrderOutboxService(
-      OutboxMessageRepository outboxMessageRepository, ObjectMapper objectMapper) {
+      OutboxMessageRepository outboxMessageRepository,
+      ObjectMapper objectMapper,
+      OutboxRelaySignal outboxRelaySignal) {
     this.outboxMessageRepository = outboxMessageRepository;
     this.objectMapper = objectMapper;
+    this.outboxRelaySignal = outboxRelaySignal;
   }
 
   public void saveOrderCreatedEvent(Order order) {
@@ -35,6 +39,8 @@ public class OrderOutboxService {
           new OutboxMessage("Order", order.getId().toString(), "OrderCreatedEvent", eventPayload);
       outboxMessageRepository.save(outboxMessage);
       log.info("OrderCreatedEvent added to outbox for Order ID: {}", order.getId());
+      // Relay the event as soon as the outbox row is committed instead of on the next poll
+      outboxRelaySignal.wakeUpAfterCommit();
     } catch (JsonProcessingException e) {
       log.error("Failed to serialize OrderCreatedEvent for Order ID: {}", order.getId(), e);
       throw new RuntimeException("Failed to serialize OrderCreatedEvent", e);
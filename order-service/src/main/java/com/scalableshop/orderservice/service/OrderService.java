@@ -7,34 +7,51 @@ import com.scalableshop.events.event.StockReservationFailedEvent;
 import com.scalableshop.events.event.StockReservedEvent;
 import com.scalableshop.orderservice.client.ProductCatalogServiceClient;
 import com.scalableshop.orderservice.client.ProductDetails;
+import com.scalableshop.orderservice.dto.OrderHistoryPage;
+import com.scalableshop.orderservice.dto.OrderStatusChange;
+import com.scalableshop.orderservice.dto.OrderSummary;
+import com.scalableshop.orderservice.dto.OrderView;
 import com.scalableshop.orderservice.model.*;
 import com.scalableshop.orderservice.repository.OrderRepository;
 import com.scalableshop.orderservice.repository.OutboxMessageRepository;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
-import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 
 @Service
 public class OrderService {
 
   private static final Logger log = LoggerFactory.getLogger(OrderService.class);
+  private static final int MAX_HISTORY_PAGE_SIZE = 100;
+  private static final Set<OrderStatus> FINAL_STATUSES =
+      EnumSet.of(OrderStatus.FAILED, OrderStatus.DELIVERED, OrderStatus.CANCELLED);
   private final OrderRepository orderRepository;
   private final OutboxMessageRepository outboxMessageRepository;
   private final OrderHelper orderHelper;
   private final ObjectMapper objectMapper;
   private final OrderOutboxService orderOutboxService;
   private final ProductCatalogServiceClient productCatalogServiceClient;
+  private final OrderCache orderCache;
+  private final OrderStatusStream orderStatusStream;
 
   @Autowired
   public OrderService(
@@ -43,13 +60,17 @@ public class OrderService {
       OrderHelper orderHelper,
       ObjectMapper objectMapper,
       OrderOutboxService orderOutboxService,
-      ProductCatalogServiceClient productCatalogServiceClient) {
+      ProductCatalogServiceClient productCatalogServiceClient,
+      OrderCache orderCache,
+      OrderStatusStream orderStatusStream) {
     this.orderRepository = orderRepository;
     this.outboxMessageRepository = outboxMessageRepository;
     this.orderHelper = orderHelper;
     this.objectMapper = objectMapper;
     this.orderOutboxService = orderOutboxService;
     this.productCatalogServiceClient = productCatalogServiceClient;
+    this.orderCache = orderCache;
+    this.orderStatusStream = orderStatusStream;
   }
 
   @Transactional
@@ -105,72 +126,173 @@ public class OrderService {
     }
   }
 
-  public Mono<Order> getOrderById(Long orderId) {
+  public Mono<OrderView> getOrderById(Long orderId) {
     return Mono.fromCallable(
         () -> {
           log.info("Fetching order with ID: {}", orderId);
-          return orderRepository
-              .findById(orderId)
+          return orderCache
+              .get(orderId, () -> orderRepository.findWithItemsById(orderId).map(OrderView::from))
               .orElseThrow(() -> new RuntimeException("Order not found with ID: " + orderId));
         });
   }
 
-  @Bean
-  public Consumer<StockReservedEvent> stockReservedEventConsumer() {
-    return event -> {
-      String eventId = "StockReservedEvent-" + event.getOrderId();
-      log.info(
-          "Received StockReservedEvent for Order ID: {} with event ID: {}",
-          event.getOrderId(),
-          eventId);
+  /**
+   * Lists a customer's orders newest first, one page at a time, without their items.
+   *
+   * @param after cursor returned with the previous page, or null for the first page
+   * @throws IllegalArgumentException if the cursor is invalid
+   */
+  public Mono<OrderHistoryPage<OrderSummary>> getOrderHistory(
+      Long customerId, String after, int limit) {
+    return Mono.fromCallable(() -> findOrderHistoryPage(customerId, after, limit));
+  }
+
+  /**
+   * Same as {@link #getOrderHistory(Long, String, int)}, with items. The items of the whole page
+   * are loaded by one additional query.
+   */
+  public Mono<OrderHistoryPage<OrderView>> getOrderHistoryWithItems(
+      Long customerId, String after, int limit) {
+    return Mono.fromCallable(
+        () -> {
+          OrderHistoryPage<OrderSummary> page = findOrderHistoryPage(customerId, after, limit);
+          List<Long> ids = page.getOrders().stream().map(OrderSummary::getId).toList();
+          if (ids.isEmpty()) {
+            return new OrderHistoryPage<>(List.<OrderView>of(), page.getNextCursor());
+          }
+          Map<Long, OrderView> viewsById =
+              orderRepository.findWithItemsByIdIn(ids).stream()
+                  .map(OrderView::from)
+                  .collect(Collectors.toMap(OrderView::getId, Function.identity()));
+          // Keep the page order; an order deleted in between is left out
+          List<OrderView> views =
+              ids.stream().map(viewsById::get).filter(Objects::nonNull).toList();
+          return new OrderHistoryPage<>(views, page.getNextCursor());
+        });
+  }
+
+  private OrderHistoryPage<OrderSummary> findOrderHistoryPage(
+      Long customerId, String after, int limit) {
+    int pageSize = Math.max(1, Math.min(limit, MAX_HISTORY_PAGE_SIZE));
+    // One extra row tells whether another page follows
+    PageRequest pageRequest = PageRequest.of(0, pageSize + 1);
+    List<OrderSummary> orders;
+    if (after == null) {
+      orders = orderRepository.findFirstPageOfCustomer(customerId, pageRequest);
+    } else {
+      OrderHistoryPage.Cursor cursor = OrderHistoryPage.Cursor.decode(after);
+      orders =
+          orderRepository.findPageOfCustomerAfter(
+              customerId, cursor.getOrderDate(), cursor.getId(), pageRequest);
+    }
 
+    if (orders.size() <= pageSize) {
+      return new OrderHistoryPage<>(orders, null);
+    }
+    List<OrderSummary> page = orders.subList(0, pageSize);
+    return new OrderHistoryPage<>(
+        List.copyOf(page), OrderHistoryPage.Cursor.after(page.get(pageSize - 1)).encode());
+  }
+
+  /**
+   * Streams the status of one order: its current status first, then every committed change,
+   * completing once the order reaches a final status.
+   */
+  public Flux<OrderStatusChange> streamOrderStatus(Long orderId) {
+    Mono<OrderStatusChange> current =
+        getOrderById(orderId)
+            .map(
+                order ->
+                    new OrderStatusChange(
+                        order.getId(),
+                        order.getCustomerId(),
+                        order.getStatus(),
+                        LocalDateTime.now()));
+    // Subscribe to live changes before reading the current status, so no change falls in between
+    return Flux.merge(orderStatusStream.forOrder(orderId), current)
+        .takeUntil(change -> FINAL_STATUSES.contains(change.getStatus()));
+  }
+
+  /** Streams every committed status change of the customer's orders. */
+  public Flux<OrderStatusChange> streamCustomerOrderStatus(Long customerId) {
+    return orderStatusStream.forCustomer(customerId);
+  }
+
+  public boolean canOpenStatusStream() {
+    return orderStatusStream.hasCapacity();
+  }
+
+  public OrderCache.Stats getOrderCacheStats() {
+    return orderCache.getStats();
+  }
+
+  /**
+   * Confirms each batch in one transaction. If the batch fails, its events are applied one by one
+   * in their own transactions, so a bad event or a transient database error costs only the events
+   * it hits. Those are rethrown, so the binder redelivers the batch; events applied in the
+   * meantime are skipped as already processed.
+   */
+  @Bean
+  public Consumer<List<StockReservedEvent>> stockReservedEventConsumer() {
+    return events -> {
+      log.info("Received batch of {} StockReservedEvent(s).", events.size());
+      int confirmed;
       try {
-        orderHelper.confirmOrder(event, eventId);
-        log.info(
-            "OrderService Consumer: StockReservedEvent for Order ID: {} processed successfully by helper.",
-            event.getOrderId());
-      } catch (DataIntegrityViolationException e) {
+        confirmed = orderHelper.confirmOrders(events);
+      } catch (RuntimeException e) {
         log.warn(
-            "OrderService Consumer: StockReservedEvent for Order ID: {} (Event ID: {}) has already been processed or is being processed concurrently. Skipping.",
-            event.getOrderId(),
-            eventId);
-      } catch (Exception e) {
-        log.error(
-            "OrderService Consumer: Error processing StockReservedEvent for Order ID: {}: {}",
-            event.getOrderId(),
-            e.getMessage(),
-            e);
+            "OrderService Consumer: StockReservedEvent batch of {} event(s) failed, retrying one by one: {}",
+            events.size(),
+            e.getMessage());
+        confirmed = oneByOne(events, StockReservedEvent::getOrderId, orderHelper::confirmOrders);
       }
+      log.info(
+          "OrderService Consumer: StockReservedEvent batch processed. {} order(s) confirmed.",
+          confirmed);
     };
   }
 
+  /** Fails each batch in one transaction, falling back like {@link #stockReservedEventConsumer}. */
   @Bean
-  public Consumer<StockReservationFailedEvent> stockReservationFailedEventConsumer() {
-    return event -> {
-      String eventId = "StockReservationFailedEvent-" + event.getOrderId();
+  public Consumer<List<StockReservationFailedEvent>> stockReservationFailedEventConsumer() {
+    return events -> {
+      log.info("Received batch of {} StockReservationFailedEvent(s).", events.size());
+      int failed;
+      try {
+        failed = orderHelper.failOrders(events);
+      } catch (RuntimeException e) {
+        log.warn(
+            "OrderService Consumer: StockReservationFailedEvent batch of {} event(s) failed, retrying one by one: {}",
+            events.size(),
+            e.getMessage());
+        failed = oneByOne(events, StockReservationFailedEvent::getOrderId, orderHelper::failOrders);
+      }
       log.info(
-          "Received StockReservationFailedEvent for Order ID: {} with event ID: {}. Reason: {}",
-          event.getOrderId(),
-          eventId,
-          event.getReason());
+          "OrderService Consumer: StockReservationFailedEvent batch processed. {} order(s) failed.",
+          failed);
+    };
+  }
 
+  // Applies each event in its own transaction and rethrows the last failure once all were tried
+  private static <E> int oneByOne(
+      List<E> events, Function<E, Long> orderIdOf, ToIntFunction<List<E>> apply) {
+    int updated = 0;
+    RuntimeException failure = null;
+    for (E event : events) {
       try {
-        orderHelper.failOrder(event, eventId); // Delegated call, renamed method
-        log.info(
-            "OrderService Consumer: StockReservationFailedEvent for Order ID: {} processed successfully by helper.",
-            event.getOrderId());
-      } catch (DataIntegrityViolationException e) {
-        log.warn(
-            "OrderService Consumer: StockReservationFailedEvent for Order ID: {} (Event ID: {}) has already been processed or is being processed concurrently. Skipping.",
-            event.getOrderId(),
-            eventId);
-      } catch (Exception e) {
+        updated += apply.applyAsInt(List.of(event));
+      } catch (RuntimeException e) {
         log.error(
-            "OrderService Consumer: Error processing StockReservationFailedEvent for Order ID: {}: {}",
-            event.getOrderId(),
+            "OrderService Consumer: Error processing event for Order ID: {}: {}",
+            orderIdOf.apply(event),
             e.getMessage(),
             e);
+        failure = e;
       }
-    };
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    return updated;
   }
 }
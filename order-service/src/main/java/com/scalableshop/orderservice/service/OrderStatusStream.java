@@ -0,0 +1,118 @@
+package com.scalableshop.orderservice.service;
+
+import com.scalableshop.orderservice.dto.OrderStatusChange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * In-process fan-out of committed order status changes to SSE subscribers.
+ *
+ * <p>The sink is best-effort: a subscriber that cannot keep up never slows the publisher or the
+ * other subscribers. Each subscriber gets its own bounded buffer that drops the oldest changes
+ * once full and is drained on a worker thread, so a blocked write to one client never holds up the
+ * publishing thread. A subscription with no change for the idle timeout completes. The number of open
+ * subscriptions is capped.
+ */
+@Component
+public class OrderStatusStream {
+
+  private static final Logger log = LoggerFactory.getLogger(OrderStatusStream.class);
+
+  private final Sinks.Many<OrderStatusChange> sink =
+      Sinks.many().multicast().directBestEffort();
+  private final AtomicInteger openStreams = new AtomicInteger();
+  private final int maxStreams;
+  private final int bufferSize;
+  private final Duration idleTimeout;
+
+  public OrderStatusStream(
+      @Value("${order.events.max-connections:1000}") int maxStreams,
+      @Value("${order.events.buffer-size:64}") int bufferSize,
+      @Value("${order.events.idle-timeout-ms:300000}") long idleTimeoutMs) {
+    this.maxStreams = maxStreams;
+    this.bufferSize = bufferSize;
+    this.idleTimeout = Duration.ofMillis(idleTimeoutMs);
+  }
+
+  /** Emits the changes once the current transaction commits, or right away without one. */
+  public void publishAfterCommit(List<OrderStatusChange> changes) {
+    if (changes.isEmpty()) {
+      return;
+    }
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      publish(changes);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            publish(changes);
+          }
+        });
+  }
+
+  /** Stream of the changes to one order. */
+  public Flux<OrderStatusChange> forOrder(Long orderId) {
+    return open(change -> Objects.equals(change.getOrderId(), orderId));
+  }
+
+  /** Stream of the changes to all orders of one customer. */
+  public Flux<OrderStatusChange> forCustomer(Long customerId) {
+    return open(change -> Objects.equals(change.getCustomerId(), customerId));
+  }
+
+  /** Whether another stream can be opened. Callers check this to reject a request up front. */
+  public boolean hasCapacity() {
+    return openStreams.get() < maxStreams;
+  }
+
+  // The slot is taken on subscription and released when the stream ends, so an unsubscribed flux
+  // holds nothing. A subscriber over the limit gets an empty stream.
+  private Flux<OrderStatusChange> open(Predicate<OrderStatusChange> filter) {
+    return Flux.defer(
+        () -> {
+          if (openStreams.incrementAndGet() > maxStreams) {
+            openStreams.decrementAndGet();
+            return Flux.empty();
+          }
+          return sink.asFlux()
+              .filter(filter)
+              .onBackpressureBuffer(bufferSize, BufferOverflowStrategy.DROP_OLDEST)
+              // Hands each change to the subscriber off the publishing thread, one at a time, so
+              // the buffer above fills up while the subscriber is busy
+              .publishOn(Schedulers.boundedElastic(), 1)
+              .timeout(idleTimeout)
+              .onErrorResume(TimeoutException.class, e -> Flux.<OrderStatusChange>empty())
+              .doFinally(signal -> openStreams.decrementAndGet());
+        });
+  }
+
+  // The sink rejects concurrent emits, so publishers are serialized to keep every change
+  private synchronized void publish(List<OrderStatusChange> changes) {
+    for (OrderStatusChange change : changes) {
+      Sinks.EmitResult result = sink.tryEmitNext(change);
+      if (result.isFailure() && result != Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+        log.warn(
+            "OrderStatusStream: Could not emit status change for Order ID: {}: {}",
+            change.getOrderId(),
+            result);
+      }
+    }
+  }
+}
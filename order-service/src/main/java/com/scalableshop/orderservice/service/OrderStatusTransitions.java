@@ -0,0 +1,80 @@
+package com.scalableshop.orderservice.service;
+
+import com.scalableshop.orderservice.model.OrderStatus;
+import com.scalableshop.orderservice.repository.OrderRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Order state machine. Each transition is one guarded UPDATE ... WHERE id = ? AND status IN (...)
+ * so it needs no entity load and no lock: of two concurrent transitions, only the first one to
+ * commit finds the order in an allowed source status. Updated orders are evicted from the {@link
+ * OrderCache}.
+ */
+@Component
+public class OrderStatusTransitions {
+
+  private static final Map<OrderStatus, Set<OrderStatus>> ALLOWED_SOURCES =
+      new EnumMap<>(OrderStatus.class);
+
+  static {
+    ALLOWED_SOURCES.put(OrderStatus.PENDING, EnumSet.noneOf(OrderStatus.class));
+    ALLOWED_SOURCES.put(OrderStatus.CONFIRMED, EnumSet.of(OrderStatus.PENDING));
+    ALLOWED_SOURCES.put(OrderStatus.BACKORDERED, EnumSet.of(OrderStatus.PENDING));
+    ALLOWED_SOURCES.put(OrderStatus.FAILED, EnumSet.of(OrderStatus.PENDING));
+    ALLOWED_SOURCES.put(OrderStatus.SHIPPED, EnumSet.of(OrderStatus.CONFIRMED));
+    ALLOWED_SOURCES.put(OrderStatus.DELIVERED, EnumSet.of(OrderStatus.SHIPPED));
+    ALLOWED_SOURCES.put(
+        OrderStatus.CANCELLED,
+        EnumSet.of(OrderStatus.PENDING, OrderStatus.CONFIRMED, OrderStatus.BACKORDERED));
+  }
+
+  private final OrderRepository orderRepository;
+  private final OrderCache orderCache;
+
+  public OrderStatusTransitions(OrderRepository orderRepository, OrderCache orderCache) {
+    this.orderRepository = orderRepository;
+    this.orderCache = orderCache;
+  }
+
+  /** Statuses an order may be in to move to the given target status. */
+  public static Set<OrderStatus> allowedSources(OrderStatus target) {
+    return ALLOWED_SOURCES.get(target);
+  }
+
+  /**
+   * Moves one order to the target status if its current status allows it.
+   *
+   * @return true if the order was updated, false if it does not exist or is in another status
+   */
+  @Transactional
+  public boolean transition(Long orderId, OrderStatus target) {
+    return transitionAll(List.of(orderId), target) == 1;
+  }
+
+  /**
+   * Moves every order whose current status allows it to the target status, in one statement.
+   *
+   * @return the number of orders updated
+   */
+  @Transactional
+  public int transitionAll(Collection<Long> orderIds, OrderStatus target) {
+    Set<OrderStatus> sources = allowedSources(target);
+    if (orderIds.isEmpty() || sources.isEmpty()) {
+      return 0;
+    }
+    int updated = orderRepository.updateStatus(orderIds, sources, target);
+    if (updated > 0) {
+      // The guarded UPDATE does not say which rows changed, so evict every candidate
+      orderCache.invalidateAll(orderIds);
+    }
+    return updated;
+  }
+}
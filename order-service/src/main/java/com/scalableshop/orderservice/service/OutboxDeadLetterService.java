@@ -0,0 +1,86 @@
+package com.scalableshop.orderservice.service;
+
+import com.scalableshop.orderservice.model.OutboxDeadLetter;
+import com.scalableshop.orderservice.model.OutboxMessage;
+import com.scalableshop.orderservice.repository.OutboxDeadLetterRepository;
+import com.scalableshop.orderservice.repository.OutboxMessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+@Service
+public class OutboxDeadLetterService {
+
+  private static final Logger log = LoggerFactory.getLogger(OutboxDeadLetterService.class);
+
+  private final OutboxDeadLetterRepository outboxDeadLetterRepository;
+  private final OutboxMessageRepository outboxMessageRepository;
+  private final OutboxRelaySignal outboxRelaySignal;
+
+  public OutboxDeadLetterService(
+      OutboxDeadLetterRepository outboxDeadLetterRepository,
+      OutboxMessageRepository outboxMessageRepository,
+      OutboxRelaySignal outboxRelaySignal) {
+    this.outboxDeadLetterRepository = outboxDeadLetterRepository;
+    this.outboxMessageRepository = outboxMessageRepository;
+    this.outboxRelaySignal = outboxRelaySignal;
+  }
+
+  /** Moves a message out of the outbox. Must run in the relayer's transaction. */
+  @Transactional
+  public void deadLetter(OutboxMessage message) {
+    outboxDeadLetterRepository.save(new OutboxDeadLetter(message, LocalDateTime.now()));
+    outboxMessageRepository.delete(message);
+    log.error(
+        "Moved outbox message with ID: {} (event '{}', aggregateId '{}') to the dead-letter table after {} attempt(s). Last error: {}",
+        message.getId(),
+        message.getEventType(),
+        message.getAggregateId(),
+        message.getAttempts(),
+        message.getLastError());
+  }
+
+  public Page<OutboxDeadLetter> getDeadLetters(int page, int size) {
+    return outboxDeadLetterRepository.findAll(
+        PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "deadLetteredAt")));
+  }
+
+  /**
+   * Puts a dead-lettered message back into the outbox with a fresh attempt count. It keeps its
+   * original createdAt, so it is published before the messages of its aggregate held back behind
+   * it.
+   *
+   * @return the new outbox message, or empty if no dead letter exists with this ID
+   */
+  @Transactional
+  public Optional<OutboxMessage> replay(UUID deadLetterId) {
+    return outboxDeadLetterRepository
+        .findById(deadLetterId)
+        .map(
+            deadLetter -> {
+              OutboxMessage replayed =
+                  outboxMessageRepository.save(
+                      new OutboxMessage(
+                          deadLetter.getAggregateType(),
+                          deadLetter.getAggregateId(),
+                          deadLetter.getEventType(),
+                          deadLetter.getPayload(),
+                          deadLetter.getCreatedAt()));
+              outboxDeadLetterRepository.delete(deadLetter);
+              outboxRelaySignal.wakeUpAfterCommit();
+              log.info(
+                  "Replayed dead-lettered message with ID: {} as outbox message with ID: {}",
+                  deadLetterId,
+                  replayed.getId());
+              return replayed;
+            });
+  }
+}
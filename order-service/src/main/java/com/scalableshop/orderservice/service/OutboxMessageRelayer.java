@@ -1,86 +1,331 @@
 package com.scalableshop.orderservice.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.scalableshop.events.event.OrderCreatedEvent;
 import com.scalableshop.orderservice.model.OutboxMessage;
 import com.scalableshop.orderservice.repository.OutboxMessageRepository;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.stream.function.StreamBridge;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.MimeTypeUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Component
 public class OutboxMessageRelayer {
 
   private static final Logger log = LoggerFactory.getLogger(OutboxMessageRelayer.class);
 
+  private static final String UNROUTABLE = "No output binding for event type";
+
+  public static final String EVENT_TYPE_HEADER = "eventType";
+  public static final String AGGREGATE_ID_HEADER = "aggregateId";
+  // Used by the producer bindings' partition-key-expression
+  public static final String PARTITION_KEY_HEADER = "partitionKey";
+
+  // Output binding for each event type written to the outbox.
+  // The bindings are configured in application.properties.
+  private static final Map<String, String> BINDINGS_BY_EVENT_TYPE =
+      Map.of("OrderCreatedEvent", "orderCreatedEventProducer-out-0");
+
   private final OutboxMessageRepository outboxMessageRepository;
+  private final OutboxDeadLetterService outboxDeadLetterService;
   private final StreamBridge streamBridge;
-  private final ObjectMapper objectMapper;
+  private final int batchSize;
+  private final long confirmTimeoutMillis;
+  private final int lanes;
+  private final int maxAttempts;
+  private final long retryBackoffMillis;
+  private final long maxRetryBackoffMillis;
+  private final ExecutorService laneExecutor;
 
   public OutboxMessageRelayer(
       OutboxMessageRepository outboxMessageRepository,
+      OutboxDeadLetterService outboxDeadLetterService,
       StreamBridge streamBridge,
-      ObjectMapper objectMapper) {
+      @Value("${outbox.relay.batch-size:100}") int batchSize,
+      @Value("${outbox.relay.confirm-timeout-ms:5000}") long confirmTimeoutMillis,
+      @Value("${outbox.relay.lanes:4}") int lanes,
+      @Value("${outbox.relay.max-attempts:10}") int maxAttempts,
+      @Value("${outbox.relay.retry-backoff-ms:1000}") long retryBackoffMillis,
+      @Value("${outbox.relay.max-retry-backoff-ms:300000}") long maxRetryBackoffMillis) {
     this.outboxMessageRepository = outboxMessageRepository;
+    this.outboxDeadLetterService = outboxDeadLetterService;
     this.streamBridge = streamBridge;
-    this.objectMapper = objectMapper;
+    this.batchSize = batchSize;
+    this.confirmTimeoutMillis = confirmTimeoutMillis;
+    this.lanes = lanes;
+    this.maxAttempts = maxAttempts;
+    this.retryBackoffMillis = retryBackoffMillis;
+    this.maxRetryBackoffMillis = maxRetryBackoffMillis;
+    this.laneExecutor =
+        Executors.newFixedThreadPool(
+            lanes,
+            runnable -> {
+              Thread thread = new Thread(runnable, "outbox-relay-lane");
+              thread.setDaemon(true);
+              return thread;
+            });
   }
 
-  @Scheduled(fixedDelay = 5000) // Run every 5 seconds
-  @Transactional // Ensure delete is transactional
-  public void processOutboxMessages() {
-    // Fetch a batch of messages to process.
-    // For a production system, consider adding a lock or using SELECT FOR UPDATE SKIP LOCKED
-    // to prevent multiple relayer instances from processing the same message.
-    List<OutboxMessage> messages = outboxMessageRepository.findTop100ByOrderByCreatedAtAsc();
+  /**
+   * Relays one batch of outbox messages. Driven by {@link OutboxRelayLoop}.
+   *
+   * @return the number of messages claimed in this run
+   */
+  @Transactional // Keeps the claimed rows locked until the confirmed deletes are committed
+  public int processOutboxMessages() {
+    // Claim a batch of messages with SELECT ... FOR UPDATE SKIP LOCKED.
+    // Rows locked by another order-service instance are skipped, so multiple relayers
+    // partition the outbox between them instead of publishing the same messages. Only the oldest
+    // message of each aggregate is claimed, so no relayer overtakes one still in flight.
+    LocalDateTime now = LocalDateTime.now();
+    List<OutboxMessage> messages =
+        outboxMessageRepository.claimBatch(now, PageRequest.of(0, batchSize));
 
     if (messages.isEmpty()) {
       // log.debug("No outbox messages to process."); // Uncomment for more verbose logging
-      return;
+      return 0;
     }
 
     log.info("Processing {} outbox messages...", messages.size());
 
+    // Shard the batch into lanes by aggregate. Lanes publish in parallel, while messages of the
+    // same aggregate stay in one lane and keep their createdAt order.
+    Map<Integer, List<OutboxMessage>> messagesByLane = new LinkedHashMap<>();
     for (OutboxMessage message : messages) {
+      messagesByLane
+          .computeIfAbsent(laneOf(message.getAggregateId()), lane -> new ArrayList<>())
+          .add(message);
+    }
+
+    // Publish the whole batch first, then wait for the broker's publisher confirms.
+    List<Future<LaneResult>> laneResults = new ArrayList<>();
+    for (List<OutboxMessage> laneMessages : messagesByLane.values()) {
+      laneResults.add(laneExecutor.submit(() -> publishLane(laneMessages)));
+    }
+    Map<UUID, CorrelationData> pendingConfirms = new LinkedHashMap<>();
+    Map<UUID, String> failures = new HashMap<>();
+    for (Future<LaneResult> laneResult : laneResults) {
       try {
-        // Deserialize the payload into the specific event type
-        // Here we assume all messages in this outbox are OrderCreatedEvent.
-        // In a multi-event outbox, you'd use a switch/if-else based on message.getEventType()
-        OrderCreatedEvent event =
-            objectMapper.readValue(message.getPayload(), OrderCreatedEvent.class);
-
-        // Publish the message to RabbitMQ
-        // The 'orderCreatedEventProducer-out-0' binding should be configured in
-        // application.properties
-        streamBridge.send("orderCreatedEventProducer-out-0", event);
-        log.info(
-            "Successfully published event '{}' for aggregateId '{}' to RabbitMQ.",
-            message.getEventType(),
-            message.getAggregateId());
+        LaneResult result = laneResult.get();
+        pendingConfirms.putAll(result.pendingConfirms);
+        failures.putAll(result.failures);
+      } catch (ExecutionException e) {
+        log.error("Outbox relay lane failed. Its messages will be retried later.", e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        log.warn("Interrupted while publishing outbox lanes. Remaining messages will retry.");
+        break;
+      }
+    }
+
+    List<UUID> confirmedIds =
+        afterFailuresRemoved(messages, awaitConfirms(pendingConfirms, failures));
+    if (!confirmedIds.isEmpty()) {
+      // Delete only the messages the broker has confirmed, in a single DELETE ... WHERE id IN.
+      // Anything nacked or unconfirmed stays in the outbox and is retried (at-least-once).
+      outboxMessageRepository.deleteAllByIdInBatch(confirmedIds);
+    }
+    if (!failures.isEmpty()) {
+      handleFailures(messages, failures, now);
+    }
+    log.info(
+        "Published {} of {} outbox messages with broker confirmation.",
+        confirmedIds.size(),
+        messages.size());
+    return messages.size();
+  }
 
-        // Delete the message from the outbox after successful publication
-        outboxMessageRepository.delete(message);
-        log.debug("Deleted outbox message with ID: {}", message.getId());
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    laneExecutor.shutdown();
+  }
+
+  /** Publishes the messages of one lane in order, returning the confirms to wait for. */
+  private LaneResult publishLane(List<OutboxMessage> laneMessages) {
+    LaneResult result = new LaneResult();
+    // Once a message of an aggregate fails, its later messages are held back so they are
+    // never published ahead of it.
+    Set<String> blockedAggregates = new HashSet<>();
 
-      } catch (JsonProcessingException e) {
+    for (OutboxMessage message : laneMessages) {
+      if (blockedAggregates.contains(message.getAggregateId())) {
+        continue;
+      }
+      String bindingName = BINDINGS_BY_EVENT_TYPE.get(message.getEventType());
+      if (bindingName == null) {
         log.error(
-            "Failed to deserialize outbox message payload for ID: {}. Skipping.",
-            message.getId(),
-            e);
-        // Consider moving to a dead-letter outbox table or marking as failed to avoid infinite
-        // retries on malformed data.
+            "No output binding registered for event type '{}' (outbox message ID: {}).",
+            message.getEventType(),
+            message.getId());
+        // Unroutable messages can never succeed, so they go straight to the dead-letter table.
+        result.failures.put(message.getId(), UNROUTABLE);
+        blockedAggregates.add(message.getAggregateId());
+        continue;
+      }
+
+      try {
+        // Publish the stored JSON as-is. The payload was serialized when the outbox row was
+        // written, so there is no need to deserialize it and let the binder serialize it again.
+        CorrelationData correlationData = new CorrelationData(message.getId().toString());
+        streamBridge.send(bindingName, toMessage(message, correlationData));
+        result.pendingConfirms.put(message.getId(), correlationData);
+        log.debug(
+            "Sent event '{}' for aggregateId '{}' to RabbitMQ. Awaiting publisher confirm.",
+            message.getEventType(),
+            message.getAggregateId());
       } catch (Exception e) {
         // Catch broader exceptions during sending (e.g., RabbitMQ connectivity issues)
         log.error(
             "Failed to send outbox message with ID: {}. Will retry later.", message.getId(), e);
-        // The message remains in the outbox to be retried in the next scheduled run.
+        // The message remains in the outbox to be retried in the next run.
+        result.failures.put(message.getId(), "Send failed: " + e.getMessage());
+        blockedAggregates.add(message.getAggregateId());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Schedules failed messages for a retry with exponential back-off, or dead-letters them once
+   * they are unroutable or out of attempts, so poison messages stop being claimed every cycle.
+   */
+  private void handleFailures(
+      List<OutboxMessage> messages, Map<UUID, String> failures, LocalDateTime now) {
+    for (OutboxMessage message : messages) {
+      String error = failures.get(message.getId());
+      if (error == null) {
+        continue;
+      }
+      long backoff =
+          Math.min(
+              maxRetryBackoffMillis,
+              retryBackoffMillis << Math.min(message.getAttempts(), 30));
+      message.recordFailedAttempt(error, now.plus(Duration.ofMillis(backoff)));
+
+      if (UNROUTABLE.equals(error) || message.getAttempts() >= maxAttempts) {
+        outboxDeadLetterService.deadLetter(message);
+      }
+    }
+  }
+
+  /**
+   * Drops confirmed messages that follow an unconfirmed message of their aggregate in the batch.
+   * They stay in the outbox and are published again after the earlier one, so consumers see the
+   * messages of an aggregate in order, at the cost of a duplicate.
+   */
+  private static List<UUID> afterFailuresRemoved(
+      List<OutboxMessage> messages, List<UUID> confirmedIds) {
+    Set<UUID> confirmed = new HashSet<>(confirmedIds);
+    Set<String> unconfirmedAggregates = new HashSet<>();
+    List<UUID> deletable = new ArrayList<>(confirmedIds.size());
+    for (OutboxMessage message : messages) {
+      if (unconfirmedAggregates.contains(message.getAggregateId())) {
+        continue;
+      }
+      if (confirmed.contains(message.getId())) {
+        deletable.add(message.getId());
+      } else {
+        unconfirmedAggregates.add(message.getAggregateId());
+      }
+    }
+    if (deletable.size() < confirmedIds.size()) {
+      log.warn(
+          "Keeping {} confirmed outbox message(s) behind failed messages of their aggregate.",
+          confirmedIds.size() - deletable.size());
+    }
+    return deletable;
+  }
+
+  private static int aggregateHash(String aggregateId) {
+    return aggregateId.hashCode() & Integer.MAX_VALUE;
+  }
+
+  private int laneOf(String aggregateId) {
+    return aggregateHash(aggregateId) % lanes;
+  }
+
+  private List<UUID> awaitConfirms(
+      Map<UUID, CorrelationData> pendingConfirms, Map<UUID, String> failures) {
+    List<UUID> confirmedIds = new ArrayList<>(pendingConfirms.size());
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMillis);
+
+    for (Map.Entry<UUID, CorrelationData> entry : pendingConfirms.entrySet()) {
+      try {
+        long remaining = Math.max(0, deadline - System.nanoTime());
+        CorrelationData.Confirm confirm =
+            entry.getValue().getFuture().get(remaining, TimeUnit.NANOSECONDS);
+        if (confirm.isAck()) {
+          confirmedIds.add(entry.getKey());
+        } else {
+          log.warn(
+              "Broker nacked outbox message with ID: {} ({}). Will retry later.",
+              entry.getKey(),
+              confirm.getReason());
+          failures.put(entry.getKey(), "Nacked by broker: " + confirm.getReason());
+        }
+      } catch (TimeoutException e) {
+        log.warn(
+            "No publisher confirm for outbox message with ID: {} within {} ms. Will retry later.",
+            entry.getKey(),
+            confirmTimeoutMillis);
+        failures.put(entry.getKey(), "No publisher confirm within " + confirmTimeoutMillis + " ms");
+      } catch (ExecutionException e) {
+        log.error(
+            "Publisher confirm failed for outbox message with ID: {}. Will retry later.",
+            entry.getKey(),
+            e);
+        failures.put(entry.getKey(), "Publisher confirm failed: " + e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        log.warn("Interrupted while awaiting publisher confirms. Remaining messages will retry.");
+        break;
       }
     }
+    return confirmedIds;
+  }
+
+  private Message<byte[]> toMessage(OutboxMessage message, CorrelationData correlationData) {
+    return MessageBuilder.withPayload(message.getPayload().getBytes(StandardCharsets.UTF_8))
+        .setHeader(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON_VALUE)
+        .setHeader(EVENT_TYPE_HEADER, message.getEventType())
+        .setHeader(AGGREGATE_ID_HEADER, message.getAggregateId())
+        .setHeader(PARTITION_KEY_HEADER, aggregateHash(message.getAggregateId()))
+        .setHeader(AmqpHeaders.PUBLISH_CONFIRM_CORRELATION, correlationData)
+        .build();
+  }
+
+  private static final class LaneResult {
+    private final Map<UUID, CorrelationData> pendingConfirms = new LinkedHashMap<>();
+    private final Map<UUID, String> failures = new HashMap<>();
   }
 }
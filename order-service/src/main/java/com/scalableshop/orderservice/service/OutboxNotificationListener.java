@@ -0,0 +1,145 @@
+package com.scalableshop.orderservice.service;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Change-data-capture style relay mode (outbox.relay.mode=notify). A statement-level trigger on
+ * outbox_messages issues a PostgreSQL NOTIFY, which the database delivers when the inserting
+ * transaction commits. This listener holds one dedicated connection that LISTENs on the channel and
+ * wakes the relay for every commit, including commits made by other order-service instances.
+ *
+ * <p>The trigger is installed with the schema from db/outbox-notify-postgresql.sql; without it the
+ * relay falls back to polling. The LISTEN connection is opened with the datasource settings but
+ * outside the pool, so it neither takes a pooled connection for good nor hands a connection still
+ * subscribed to the channel back to the pool.
+ *
+ * <p>The polling {@link OutboxRelayLoop} keeps running as the safety net, and
+ * outbox.relay.mode=polling (the default) disables this listener altogether.
+ */
+@Component
+@ConditionalOnProperty(name = "outbox.relay.mode", havingValue = "notify")
+public class OutboxNotificationListener implements SmartLifecycle {
+
+  private static final Logger log = LoggerFactory.getLogger(OutboxNotificationListener.class);
+
+  private static final String CHANNEL = "outbox_messages";
+
+  private final DataSource listenDataSource;
+  private final OutboxRelaySignal outboxRelaySignal;
+  private final int pollTimeoutMillis;
+  private final long reconnectDelayMillis;
+
+  private volatile boolean running;
+  private Thread worker;
+
+  @Autowired
+  public OutboxNotificationListener(
+      DataSourceProperties dataSourceProperties,
+      OutboxRelaySignal outboxRelaySignal,
+      @Value("${outbox.relay.notify.poll-timeout-ms:1000}") int pollTimeoutMillis,
+      @Value("${outbox.relay.notify.reconnect-delay-ms:5000}") long reconnectDelayMillis) {
+    this(
+        dataSourceProperties
+            .initializeDataSourceBuilder()
+            .type(SimpleDriverDataSource.class)
+            .build(),
+        outboxRelaySignal,
+        pollTimeoutMillis,
+        reconnectDelayMillis);
+  }
+
+  /** Listens on connections from {@code listenDataSource}, which must not be a pool. */
+  public OutboxNotificationListener(
+      DataSource listenDataSource,
+      OutboxRelaySignal outboxRelaySignal,
+      int pollTimeoutMillis,
+      long reconnectDelayMillis) {
+    this.listenDataSource = listenDataSource;
+    this.outboxRelaySignal = outboxRelaySignal;
+    this.pollTimeoutMillis = pollTimeoutMillis;
+    this.reconnectDelayMillis = reconnectDelayMillis;
+  }
+
+  @Override
+  public void start() {
+    running = true;
+    worker = new Thread(this::run, "outbox-notify-listener");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    if (worker != null) {
+      worker.interrupt();
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  private void run() {
+    while (running) {
+      try (Connection connection = listenDataSource.getConnection()) {
+        connection.setAutoCommit(true);
+        PGConnection pgConnection = subscribe(connection);
+        log.info("Listening for outbox inserts on PostgreSQL channel '{}'.", CHANNEL);
+        // Catch up on anything committed while no listener was connected
+        outboxRelaySignal.wakeUp();
+        while (running) {
+          awaitNotifications(pgConnection);
+        }
+      } catch (SQLException e) {
+        if (!running) {
+          return;
+        }
+        log.error(
+            "Outbox notification listener lost its connection. Reconnecting in {} ms.",
+            reconnectDelayMillis,
+            e);
+        outboxRelaySignal.wakeUp(); // Let the poller cover the gap
+        try {
+          Thread.sleep(reconnectDelayMillis);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /** Starts listening on this connection. */
+  private PGConnection subscribe(Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("LISTEN " + CHANNEL);
+    }
+    return connection.unwrap(PGConnection.class);
+  }
+
+  /** Blocks up to the poll timeout for notifications and wakes the relay if any arrived. */
+  private void awaitNotifications(PGConnection pgConnection) throws SQLException {
+    PGNotification[] notifications = pgConnection.getNotifications(pollTimeoutMillis);
+    if (notifications != null && notifications.length > 0) {
+      log.debug("Received {} outbox notification(s). Waking the relay.", notifications.length);
+      outboxRelaySignal.wakeUp();
+    }
+  }
+}
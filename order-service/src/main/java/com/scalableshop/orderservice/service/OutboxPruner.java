@@ -0,0 +1,50 @@
+package com.scalableshop.orderservice.service;
+
+import com.scalableshop.idempotency.BatchPruner;
+import com.scalableshop.orderservice.repository.OutboxDeadLetterRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+/** Deletes dead letters older than the retention period. */
+@Component
+public class OutboxPruner {
+
+  private static final Logger log = LoggerFactory.getLogger(OutboxPruner.class);
+
+  private final OutboxDeadLetterRepository outboxDeadLetterRepository;
+  private final BatchPruner batchPruner;
+  private final int retentionDays;
+
+  public OutboxPruner(
+      OutboxDeadLetterRepository outboxDeadLetterRepository,
+      TransactionTemplate transactionTemplate,
+      @Value("${outbox.dead-letters.retention-days:14}") int retentionDays,
+      @Value("${outbox.pruner.batch-size:500}") int batchSize) {
+    this.outboxDeadLetterRepository = outboxDeadLetterRepository;
+    this.batchPruner =
+        new BatchPruner(batchSize, work -> transactionTemplate.execute(status -> work.getAsInt()));
+    this.retentionDays = retentionDays;
+  }
+
+  @Scheduled(fixedDelayString = "${outbox.pruner.interval-ms:3600000}")
+  public void pruneDeadLetters() {
+    LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+    int pruned =
+        batchPruner.prune(
+            limit ->
+                outboxDeadLetterRepository.findIdsDeadLetteredBefore(
+                    cutoff, PageRequest.of(0, limit)),
+            outboxDeadLetterRepository::deleteAllByIdInBatch);
+
+    if (pruned > 0) {
+      log.info("Pruned {} dead-lettered outbox messages older than {}.", pruned, cutoff);
+    }
+  }
+}
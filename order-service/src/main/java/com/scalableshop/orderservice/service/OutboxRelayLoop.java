@@ -0,0 +1,101 @@
+package com.scalableshop.orderservice.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drives {@link OutboxMessageRelayer}. The relay runs as soon as {@link OutboxRelaySignal} is
+ * fired after an order commits, and otherwise polls with an adaptive delay as a safety net:
+ * immediately again while batches come back full, at the minimum delay after a partial batch, and
+ * backing off exponentially up to the maximum delay while the outbox stays empty.
+ */
+@Component
+@ConditionalOnProperty(name = "outbox.relay.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxRelayLoop implements SmartLifecycle {
+
+  private static final Logger log = LoggerFactory.getLogger(OutboxRelayLoop.class);
+
+  private final OutboxMessageRelayer outboxMessageRelayer;
+  private final OutboxRelaySignal outboxRelaySignal;
+  private final long minDelayMillis;
+  private final long maxDelayMillis;
+
+  private volatile boolean running;
+  private Thread worker;
+
+  public OutboxRelayLoop(
+      OutboxMessageRelayer outboxMessageRelayer,
+      OutboxRelaySignal outboxRelaySignal,
+      @Value("${outbox.relay.poll.min-delay-ms:50}") long minDelayMillis,
+      @Value("${outbox.relay.poll.max-delay-ms:5000}") long maxDelayMillis) {
+    this.outboxMessageRelayer = outboxMessageRelayer;
+    this.outboxRelaySignal = outboxRelaySignal;
+    this.minDelayMillis = minDelayMillis;
+    this.maxDelayMillis = maxDelayMillis;
+  }
+
+  @Override
+  public void start() {
+    running = true;
+    worker = new Thread(this::run, "outbox-relay");
+    worker.setDaemon(true);
+    worker.start();
+    log.info(
+        "Outbox relay started (poll delay {}-{} ms, woken on commit).",
+        minDelayMillis,
+        maxDelayMillis);
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    if (worker != null) {
+      worker.interrupt();
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  private void run() {
+    long delay = minDelayMillis;
+    while (running) {
+      try {
+        int claimed = outboxMessageRelayer.processOutboxMessages();
+        delay = nextDelay(delay, claimed);
+        if (delay > 0 && outboxRelaySignal.await(delay)) {
+          // Woken by a commit: restart the back-off from the fast end.
+          delay = minDelayMillis;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        log.error("Outbox relay run failed. Backing off before retrying.", e);
+        delay = maxDelayMillis;
+        try {
+          outboxRelaySignal.await(delay);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  private long nextDelay(long currentDelay, int claimed) {
+    if (claimed >= outboxMessageRelayer.getBatchSize()) {
+      return 0; // Backlog: drain the next batch right away
+    }
+    if (claimed > 0) {
+      return minDelayMillis;
+    }
+    return Math.min(maxDelayMillis, Math.max(minDelayMillis, currentDelay * 2));
+  }
+}
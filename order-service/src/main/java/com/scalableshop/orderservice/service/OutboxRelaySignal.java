@@ -0,0 +1,51 @@
+package com.scalableshop.orderservice.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process wake-up signal for the outbox relay. Writers signal after their outbox row is
+ * committed so the relay drains it immediately instead of waiting for the next poll.
+ */
+@Component
+public class OutboxRelaySignal {
+
+  // At most one pending wake-up: many signals between two drains collapse into one.
+  private final Semaphore pending = new Semaphore(0);
+
+  /** Wakes the relay once the current transaction commits, or right away if there is none. */
+  public void wakeUpAfterCommit() {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              wakeUp();
+            }
+          });
+    } else {
+      wakeUp();
+    }
+  }
+
+  public void wakeUp() {
+    if (pending.availablePermits() == 0) {
+      pending.release();
+    }
+  }
+
+  /**
+   * Blocks until {@link #wakeUp()} is called or the timeout elapses.
+   *
+   * @return true if woken by a signal, false on timeout
+   */
+  public boolean await(long timeoutMillis) throws InterruptedException {
+    boolean woken = pending.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+    pending.drainPermits();
+    return woken;
+  }
+}
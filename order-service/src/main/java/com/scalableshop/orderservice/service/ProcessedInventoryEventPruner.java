@@ -0,0 +1,53 @@
+package com.scalableshop.orderservice.service;
+
+import com.scalableshop.idempotency.BatchPruner;
+import com.scalableshop.orderservice.repository.ProcessedInventoryEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * Deletes processed inventory events older than the retention period. The retention period must
+ * stay longer than the longest time a stock event can be redelivered.
+ */
+@Component
+public class ProcessedInventoryEventPruner {
+
+  private static final Logger log = LoggerFactory.getLogger(ProcessedInventoryEventPruner.class);
+
+  private final ProcessedInventoryEventRepository processedInventoryEventRepository;
+  private final BatchPruner batchPruner;
+  private final int retentionHours;
+
+  public ProcessedInventoryEventPruner(
+      ProcessedInventoryEventRepository processedInventoryEventRepository,
+      TransactionTemplate transactionTemplate,
+      @Value("${idempotency.processed-events.retention-hours:168}") int retentionHours,
+      @Value("${idempotency.pruner.batch-size:1000}") int batchSize) {
+    this.processedInventoryEventRepository = processedInventoryEventRepository;
+    this.batchPruner =
+        new BatchPruner(batchSize, work -> transactionTemplate.execute(status -> work.getAsInt()));
+    this.retentionHours = retentionHours;
+  }
+
+  @Scheduled(fixedDelayString = "${idempotency.pruner.interval-ms:3600000}")
+  public void pruneProcessedEvents() {
+    LocalDateTime cutoff = LocalDateTime.now().minusHours(retentionHours);
+    int pruned =
+        batchPruner.prune(
+            limit ->
+                processedInventoryEventRepository.findIdsProcessedBefore(
+                    cutoff, PageRequest.of(0, limit)),
+            processedInventoryEventRepository::deleteAllByIdInBatch);
+
+    if (pruned > 0) {
+      log.info("Pruned {} processed inventory events older than {}.", pruned, cutoff);
+    }
+  }
+}
@@ -0,0 +1,27 @@
+-- NOTIFY trigger for outbox.relay.mode=notify, applied by spring.sql.init once Hibernate has
+-- updated the schema. Every statement is safe to run again on each startup. Statements end with
+-- ^; (spring.sql.init.separator) because the function bodies contain semicolons.
+
+-- One notification per inserting statement; NOTIFY also folds identical payloads per transaction
+CREATE OR REPLACE FUNCTION outbox_messages_notify() RETURNS trigger AS $$
+BEGIN
+  PERFORM pg_notify('outbox_messages', '');
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql^;
+
+-- Created only when missing rather than with CREATE OR REPLACE TRIGGER (PostgreSQL 14+), so later
+-- startups do not lock outbox_messages
+DO $$
+BEGIN
+  IF NOT EXISTS (
+      SELECT 1 FROM pg_trigger
+      WHERE tgname = 'outbox_messages_notify' AND tgrelid = 'outbox_messages'::regclass) THEN
+    CREATE TRIGGER outbox_messages_notify AFTER INSERT ON outbox_messages
+        FOR EACH STATEMENT EXECUTE PROCEDURE outbox_messages_notify();
+  END IF;
+EXCEPTION
+  -- Another instance starting at the same time created it first
+  WHEN duplicate_object THEN NULL;
+END;
+$$^;
@@ -0,0 +1,20 @@
+-- Schema changes ddl-auto=update does not make, applied by spring.sql.init once Hibernate has
+-- updated the schema. Every statement is safe to run again on each startup. Statements end with
+-- ^; (spring.sql.init.separator) because the DO blocks contain semicolons.
+
+-- Hibernate creates customer_orders with a check constraint listing the OrderStatus values but
+-- never updates it, so a table created before BACKORDERED was added rejects that status. The
+-- constraint is recreated once, while it does not allow BACKORDERED yet.
+DO $$
+BEGIN
+  IF EXISTS (
+      SELECT 1 FROM pg_constraint
+      WHERE conname = 'customer_orders_status_check'
+        AND conrelid = 'customer_orders'::regclass
+        AND pg_get_constraintdef(oid) NOT LIKE '%BACKORDERED%') THEN
+    ALTER TABLE customer_orders DROP CONSTRAINT customer_orders_status_check;
+    ALTER TABLE customer_orders ADD CONSTRAINT customer_orders_status_check CHECK (status IN (
+        'PENDING', 'CONFIRMED', 'BACKORDERED', 'SHIPPED', 'DELIVERED', 'CANCELLED', 'FAILED'));
+  END IF;
+END;
+$$^;
@@ -1,27 +1,62 @@
 package com.scalableshop.orderservice;
 
+import com.scalableshop.events.event.StockReservationFailedEvent;
+import com.scalableshop.events.event.StockReservedEvent;
+import com.scalableshop.orderservice.dto.OrderHistoryPage;
+import com.scalableshop.orderservice.dto.OrderStatusChange;
+import com.scalableshop.orderservice.dto.OrderSummary;
+import com.scalableshop.orderservice.dto.OrderView;
 import com.scalableshop.orderservice.model.OrderStatus;
 import com.scalableshop.orderservice.model.Order;
 import com.scalableshop.orderservice.model.OrderItem;
 import com.scalableshop.orderservice.model.OutboxMessage;
+import com.scalableshop.orderservice.model.OutboxDeadLetter;
+import com.scalableshop.orderservice.model.ProcessedInventoryEvent;
 import com.scalableshop.orderservice.repository.OrderRepository;
+import com.scalableshop.orderservice.repository.OutboxDeadLetterRepository;
 import com.scalableshop.orderservice.repository.OutboxMessageRepository;
+import com.scalableshop.orderservice.repository.ProcessedInventoryEventRepository;
+import com.scalableshop.orderservice.service.OrderCache;
+import com.scalableshop.orderservice.service.OrderHelper;
 import com.scalableshop.orderservice.service.OrderService;
+import com.scalableshop.orderservice.service.OrderStatusTransitions;
+import com.scalableshop.orderservice.service.OutboxDeadLetterService;
 import com.scalableshop.orderservice.service.OutboxMessageRelayer;
+import com.scalableshop.orderservice.service.ProcessedInventoryEventPruner;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.stubbing.Answer;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
@@ -38,6 +73,20 @@ public class OrderServiceIntegrationTest {
 
   @Autowired private OutboxMessageRepository outboxMessageRepository;
 
+  @Autowired private OutboxDeadLetterRepository outboxDeadLetterRepository;
+
+  @Autowired private OutboxDeadLetterService outboxDeadLetterService;
+
+  @Autowired private ProcessedInventoryEventRepository processedInventoryEventRepository;
+
+  @Autowired private OrderStatusTransitions orderStatusTransitions;
+
+  @Autowired private OrderHelper orderHelper;
+
+  @Autowired private ProcessedInventoryEventPruner processedInventoryEventPruner;
+
+  @Autowired private EntityManagerFactory entityManagerFactory;
+
   @MockBean // This creates a mock for StreamBridge throughout the Spring context for tests
   private StreamBridge streamBridge;
 
@@ -48,8 +97,12 @@ public class OrderServiceIntegrationTest {
     // Clean up repositories before each test to ensure a clean state
     orderRepository.deleteAll();
     outboxMessageRepository.deleteAll();
+    outboxDeadLetterRepository.deleteAll();
+    processedInventoryEventRepository.deleteAll();
     // Reset mock interactions before each test to prevent interference between tests
     reset(streamBridge);
+    // Simulate the broker acknowledging every published message
+    doAnswer(publisherConfirm(true)).when(streamBridge).send(anyString(), any());
   }
 
   @Test
@@ -100,6 +153,38 @@ public class OrderServiceIntegrationTest {
     verifyOutboxTableHasNoMessages();
   }
 
+  @Test
+  void outboxMessageRelayer_shouldPublishStoredPayloadAsIs() {
+    // Given
+    Long customerId = 3L;
+    OrderItem item = new OrderItem();
+    item.setProductId(303L);
+    item.setQuantity(3);
+    item.setUnitPrice(BigDecimal.valueOf(5.00));
+    item.setSubtotal(BigDecimal.valueOf(15.00));
+
+    prepareOutboxTableHasMessage(customerId, Collections.singletonList(item));
+    OutboxMessage outboxMessage = outboxMessageRepository.findAll().get(0);
+
+    // When
+    outboxMessageRelayer.processOutboxMessages();
+
+    // Then
+    ArgumentCaptor<Object> published = ArgumentCaptor.forClass(Object.class);
+    verify(streamBridge).send(eq("orderCreatedEventProducer-out-0"), published.capture());
+    assertThat(published.getValue()).isInstanceOf(Message.class);
+
+    Message<?> message = (Message<?>) published.getValue();
+    assertThat(new String((byte[]) message.getPayload(), StandardCharsets.UTF_8))
+        .isEqualTo(outboxMessage.getPayload());
+    assertThat(message.getHeaders().get(MessageHeaders.CONTENT_TYPE))
+        .isEqualTo("application/json");
+    assertThat(message.getHeaders().get(OutboxMessageRelayer.EVENT_TYPE_HEADER))
+        .isEqualTo("OrderCreatedEvent");
+    assertThat(message.getHeaders().get(OutboxMessageRelayer.AGGREGATE_ID_HEADER))
+        .isEqualTo(outboxMessage.getAggregateId());
+  }
+
   private void prepareOutboxTableHasMessage(Long customerId, List<OrderItem> items) {
     Order createdOrder = orderService.createOrder(customerId, items).block();
     assertThat(outboxMessageRepository.findAll()).hasSize(1); // Confirm message is in outbox
@@ -167,31 +252,671 @@ public class OrderServiceIntegrationTest {
   }
 
   @Test
-  void stockReservedEventConsumer_shouldConfirmOrder_StockReservedEvent() {}
+  void outboxMessageRelayer_shouldNotDeleteMessage_whenPublishIsNacked() {
+    // Given
+    Long customerId = 5L;
+    OrderItem item = new OrderItem();
+    item.setProductId(505L);
+    item.setQuantity(1);
+    item.setUnitPrice(BigDecimal.valueOf(12.00));
+    item.setSubtotal(BigDecimal.valueOf(12.00));
+
+    prepareOutboxTableHasMessage(customerId, Collections.singletonList(item));
+
+    // Simulate the broker rejecting the message
+    doAnswer(publisherConfirm(false)).when(streamBridge).send(anyString(), any());
+
+    // When
+    outboxMessageRelayer.processOutboxMessages();
+
+    // Then
+    verifyOrderCreatedEventIsPublished();
+    // Only confirmed messages are deleted, so the nacked message stays for a retry.
+    assertThat(outboxMessageRepository.findAll()).hasSize(1);
+  }
+
+  @Test
+  void outboxMessageRelayer_shouldDeadLetterUnroutableMessage_andReplayIt() {
+    // Given
+    outboxMessageRepository.save(
+        new OutboxMessage("Order", "42", "UnknownEvent", "{\"orderId\":42}"));
+
+    // When
+    outboxMessageRelayer.processOutboxMessages();
+
+    // Then
+    verify(streamBridge, never()).send(any(), any());
+    assertThat(outboxMessageRepository.findAll()).isEmpty();
+    List<OutboxDeadLetter> deadLetters = outboxDeadLetterRepository.findAll();
+    assertThat(deadLetters).hasSize(1);
+    assertThat(deadLetters.get(0).getAggregateId()).isEqualTo("42");
+    assertThat(deadLetters.get(0).getAttempts()).isEqualTo(1);
+
+    // When
+    assertThat(outboxDeadLetterService.replay(deadLetters.get(0).getId())).isPresent();
+
+    // Then
+    assertThat(outboxDeadLetterRepository.findAll()).isEmpty();
+    List<OutboxMessage> replayed = outboxMessageRepository.findAll();
+    assertThat(replayed).hasSize(1);
+    assertThat(replayed.get(0).getEventType()).isEqualTo("UnknownEvent");
+    assertThat(replayed.get(0).getAttempts()).isZero();
+  }
+
+  @Test
+  void outboxMessageRelayer_shouldPublishEachAggregateInCreatedAtOrder_OneMessagePerRun() {
+    // Given
+    // Interleaved messages of two aggregates, saved out of creation order
+    LocalDateTime start = LocalDateTime.now().minusMinutes(1);
+    saveOutboxMessage("A", "a2", start.plusSeconds(3));
+    saveOutboxMessage("B", "b1", start.plusSeconds(2));
+    saveOutboxMessage("A", "a1", start.plusSeconds(1));
+    saveOutboxMessage("B", "b2", start.plusSeconds(4));
+    saveOutboxMessage("A", "a3", start.plusSeconds(5));
+    Map<String, List<String>> payloadsByAggregate = new ConcurrentHashMap<>();
+    doAnswer(
+            invocation -> {
+              Message<?> message = invocation.getArgument(1);
+              String aggregateId =
+                  (String) message.getHeaders().get(OutboxMessageRelayer.AGGREGATE_ID_HEADER);
+              payloadsByAggregate
+                  .computeIfAbsent(aggregateId, id -> new CopyOnWriteArrayList<>())
+                  .add(new String((byte[]) message.getPayload(), StandardCharsets.UTF_8));
+              return publisherConfirm(true).answer(invocation);
+            })
+        .when(streamBridge)
+        .send(anyString(), any());
+
+    // When
+    // Only the oldest message of each aggregate is claimed, so each run publishes one per aggregate
+    int firstRun = outboxMessageRelayer.processOutboxMessages();
+    int secondRun = outboxMessageRelayer.processOutboxMessages();
+    int thirdRun = outboxMessageRelayer.processOutboxMessages();
+
+    // Then
+    assertThat(List.of(firstRun, secondRun, thirdRun)).containsExactly(2, 2, 1);
+    assertThat(payloadsByAggregate.get("A")).containsExactly("a1", "a2", "a3");
+    assertThat(payloadsByAggregate.get("B")).containsExactly("b1", "b2");
+    verifyOutboxTableHasNoMessages();
+  }
+
+  @Test
+  void outboxMessageRelayer_shouldHoldBackLaterMessagesOfFailedAggregate_OtherLanesContinue() {
+    // Given
+    // "A" and "B" hash to different lanes
+    LocalDateTime start = LocalDateTime.now().minusMinutes(1);
+    saveOutboxMessage("A", "a1", start.plusSeconds(1));
+    saveOutboxMessage("B", "b1", start.plusSeconds(2));
+    saveOutboxMessage("A", "a2", start.plusSeconds(3));
+    saveOutboxMessage("B", "b2", start.plusSeconds(4));
+    List<String> sent = new CopyOnWriteArrayList<>();
+    doAnswer(
+            invocation -> {
+              Message<?> message = invocation.getArgument(1);
+              String payload = new String((byte[]) message.getPayload(), StandardCharsets.UTF_8);
+              if (payload.equals("a1")) {
+                throw new RuntimeException("Simulated RabbitMQ connection error");
+              }
+              sent.add(payload);
+              return publisherConfirm(true).answer(invocation);
+            })
+        .when(streamBridge)
+        .send(anyString(), any());
+
+    // When
+    outboxMessageRelayer.processOutboxMessages();
+
+    // Then
+    assertThat(sent).containsExactly("b1");
+
+    // When
+    // a1 waits for its retry back-off, b2 is now the oldest message of "B"
+    outboxMessageRelayer.processOutboxMessages();
+
+    // Then
+    assertThat(sent).containsExactly("b1", "b2");
+    assertThat(outboxMessageRepository.findAll())
+        .extracting(OutboxMessage::getPayload)
+        .containsExactlyInAnyOrder("a1", "a2");
+  }
 
   @Test
-  void stockReservedEventConsumer_shouldConfirmOrderOnce_DuplicateStockReservedEvent() {}
+  @Transactional
+  void claimBatch_shouldSkipMessageWhileEarlierMessageOfAggregateIsInOutbox() {
+    // Given
+    // a1 is due but may be locked by another relayer; a2 must not be claimed past it
+    LocalDateTime start = LocalDateTime.now().minusMinutes(1);
+    saveOutboxMessage("A", "a1", start.plusSeconds(1));
+    saveOutboxMessage("A", "a2", start.plusSeconds(2));
+    saveOutboxMessage("B", "b1", start.plusSeconds(3));
+
+    // When
+    List<OutboxMessage> claimed =
+        outboxMessageRepository.claimBatch(LocalDateTime.now(), PageRequest.of(0, 10));
+
+    // Then
+    assertThat(claimed).extracting(OutboxMessage::getPayload).containsExactly("a1", "b1");
+  }
 
   @Test
-  void stockReservedEventConsumer_shouldNotConfirmOrder_AlreadyConfirmedOrder() {}
+  void outboxMessageRelayer_shouldKeepConfirmedMessage_WhenEarlierMessageOfAggregateIsNacked() {
+    // Given
+    // Same createdAt, so both messages of "A" are the oldest and are claimed in one batch
+    LocalDateTime createdAt = LocalDateTime.now().minusMinutes(1);
+    saveOutboxMessage("A", "a1", createdAt);
+    saveOutboxMessage("A", "a2", createdAt);
+    AtomicBoolean firstSend = new AtomicBoolean(true);
+    doAnswer(invocation -> publisherConfirm(!firstSend.getAndSet(false)).answer(invocation))
+        .when(streamBridge)
+        .send(anyString(), any());
+
+    // When
+    outboxMessageRelayer.processOutboxMessages();
+
+    // Then
+    // The later message was confirmed but stays queued behind the nacked one
+    verify(streamBridge, times(2)).send(anyString(), any());
+    assertThat(outboxMessageRepository.findAll())
+        .extracting(OutboxMessage::getPayload)
+        .containsExactlyInAnyOrder("a1", "a2");
+  }
 
   @Test
-  void stockReservedEventConsumer_shouldNotDoAnything_OrderNotFound() {}
+  void outboxMessageRelayer_shouldHoldBackAggregateUntilFailedMessageIsRetried() {
+    // Given
+    LocalDateTime start = LocalDateTime.now().minusMinutes(1);
+    saveOutboxMessage("A", "a1", start.plusSeconds(1));
+    saveOutboxMessage("A", "a2", start.plusSeconds(2));
+    doThrow(new RuntimeException("Simulated RabbitMQ connection error"))
+        .when(streamBridge)
+        .send(anyString(), any());
+    outboxMessageRelayer.processOutboxMessages();
+    reset(streamBridge);
+    doAnswer(publisherConfirm(true)).when(streamBridge).send(anyString(), any());
+
+    // When
+    // a1 waits for its retry back-off; a2 must not overtake it
+    outboxMessageRelayer.processOutboxMessages();
+
+    // Then
+    verify(streamBridge, never()).send(any(), any());
+    assertThat(outboxMessageRepository.findAll())
+        .extracting(OutboxMessage::getPayload)
+        .containsExactlyInAnyOrder("a1", "a2");
+  }
 
   @Test
-  void stockReservationFailedEventConsumer_shouldFailOrder_StockReservationFailedEvent() {}
+  void outboxMessageRelayer_shouldHoldBackAggregateWhileEarlierMessageIsDeadLettered() {
+    // Given
+    LocalDateTime start = LocalDateTime.now().minusMinutes(1);
+    saveOutboxMessage("C", "UnknownEvent", "c1", start.plusSeconds(1));
+    saveOutboxMessage("C", "c2", start.plusSeconds(2));
+
+    // When
+    outboxMessageRelayer.processOutboxMessages();
+    outboxMessageRelayer.processOutboxMessages();
+
+    // Then
+    verify(streamBridge, never()).send(any(), any());
+    assertThat(outboxDeadLetterRepository.findAll())
+        .extracting(OutboxDeadLetter::getPayload)
+        .containsExactly("c1");
+    assertThat(outboxMessageRepository.findAll())
+        .extracting(OutboxMessage::getPayload)
+        .containsExactly("c2");
+
+    // When
+    // The replayed message keeps its place ahead of the held-back one
+    OutboxMessage replayed =
+        outboxDeadLetterService
+            .replay(outboxDeadLetterRepository.findAll().get(0).getId())
+            .orElseThrow();
+
+    // Then
+    assertThat(replayed.getCreatedAt()).isEqualTo(start.plusSeconds(1));
+  }
 
   @Test
-  void stockReservationFailedEventConsumer_shouldFailOrderOnce_DupStockReservationFailedEvent() {}
+  void stockReservedEventConsumer_shouldConfirmOrder_StockReservedEvent() {
+    // Given
+    Order firstOrder = preparePendingOrder(6L, 606L);
+    Order secondOrder = preparePendingOrder(7L, 707L);
+
+    // When
+    orderService
+        .stockReservedEventConsumer()
+        .accept(List.of(stockReservedEvent(firstOrder), stockReservedEvent(secondOrder)));
+
+    // Then
+    verifyOrderStatus(firstOrder, OrderStatus.CONFIRMED);
+    verifyOrderStatus(secondOrder, OrderStatus.CONFIRMED);
+    assertThat(processedInventoryEventRepository.findAll()).hasSize(2);
+  }
 
   @Test
-  void stockReservationFailedEventConsumer_shouldNotFailOrder_AlreadyConfirmedOrder() {}
+  void stockReservedEventConsumer_shouldConfirmOrderOnce_DuplicateStockReservedEvent() {
+    // Given
+    Order order = preparePendingOrder(8L, 808L);
+
+    // When
+    // The duplicate arrives both within the same batch and in a later batch
+    orderService
+        .stockReservedEventConsumer()
+        .accept(List.of(stockReservedEvent(order), stockReservedEvent(order)));
+    orderService.stockReservedEventConsumer().accept(List.of(stockReservedEvent(order)));
+
+    // Then
+    verifyOrderStatus(order, OrderStatus.CONFIRMED);
+    assertThat(processedInventoryEventRepository.findAll()).hasSize(1);
+  }
 
   @Test
-  void stockReservationFailedEventConsumer_shouldNotFailOrder_AlreadyFailedOrder() {}
+  void stockReservedEventConsumer_shouldRetryOneByOne_AndRethrow_WhenBatchFails() {
+    // Given
+    Order order = preparePendingOrder(27L, 2727L);
+    Order brokenOrder = preparePendingOrder(28L, 2828L);
+    // A partial reservation without items cannot be applied, which fails the batch transaction
+    StockReservedEvent brokenEvent =
+        new StockReservedEvent(
+            brokenOrder.getId(),
+            brokenOrder.getCustomerId(),
+            null,
+            StockReservedEvent.Fulfilment.PARTIAL);
+
+    // When / Then
+    // The other order is still confirmed; the failure is rethrown so the binder redelivers
+    assertThatThrownBy(
+            () ->
+                orderService
+                    .stockReservedEventConsumer()
+                    .accept(List.of(brokenEvent, stockReservedEvent(order))))
+        .isInstanceOf(NullPointerException.class);
+    verifyOrderStatus(order, OrderStatus.CONFIRMED);
+    verifyOrderStatus(brokenOrder, OrderStatus.PENDING);
+  }
 
   @Test
-  void stockReservationFailedEventConsumer_shouldNotDoAnything_OrderNotFound() {}
+  void stockReservedEventConsumer_shouldConfirmOnlyReservedUnits_PartialFulfilment() {
+    // Given
+    Order order =
+        orderService.createOrder(25L, List.of(orderItem(2525L, 5), orderItem(2526L, 2))).block();
+    // 3 of the 5 units of 2525 are in stock; 2526 is sold out and dropped
+    StockReservedEvent event =
+        new StockReservedEvent(
+            order.getId(),
+            order.getCustomerId(),
+            List.of(new StockReservedEvent.ReservedItem(2525L, 3, 5, 0)),
+            StockReservedEvent.Fulfilment.PARTIAL);
+
+    // When
+    orderService.stockReservedEventConsumer().accept(List.of(event, event));
+
+    // Then
+    Order confirmed = orderRepository.findWithItemsById(order.getId()).orElseThrow();
+    assertThat(confirmed.getStatus()).isEqualTo(OrderStatus.CONFIRMED);
+    assertThat(confirmed.getOrderItems())
+        .singleElement()
+        .satisfies(
+            item -> {
+              assertThat(item.getProductId()).isEqualTo(2525L);
+              assertThat(item.getQuantity()).isEqualTo(3);
+              assertThat(item.getSubtotal()).isEqualByComparingTo("30.00");
+            });
+    assertThat(confirmed.getTotalAmount()).isEqualByComparingTo("30.00");
+  }
+
+  @Test
+  void stockReservedEventConsumer_shouldBackorderOrder_BackorderedFulfilment() {
+    // Given
+    Order order = orderService.createOrder(26L, List.of(orderItem(2626L, 4))).block();
+    StockReservedEvent event =
+        new StockReservedEvent(
+            order.getId(),
+            order.getCustomerId(),
+            List.of(new StockReservedEvent.ReservedItem(2626L, 1, 4, 3)),
+            StockReservedEvent.Fulfilment.BACKORDERED);
+
+    // When
+    orderService.stockReservedEventConsumer().accept(List.of(event));
+
+    // Then
+    // The order keeps every unit, as the backordered ones ship once restocked
+    Order backordered = orderRepository.findWithItemsById(order.getId()).orElseThrow();
+    assertThat(backordered.getStatus()).isEqualTo(OrderStatus.BACKORDERED);
+    assertThat(backordered.getOrderItems())
+        .extracting(OrderItem::getProductId, OrderItem::getQuantity)
+        .containsExactly(tuple(2626L, 4));
+    assertThat(backordered.getTotalAmount()).isEqualByComparingTo("40.00");
+    // Neither confirmed nor failed by a late event, but still cancellable
+    assertThat(orderStatusTransitions.transition(order.getId(), OrderStatus.CONFIRMED)).isFalse();
+    assertThat(orderStatusTransitions.transition(order.getId(), OrderStatus.CANCELLED)).isTrue();
+  }
+
+  @Test
+  void stockReservedEventConsumer_shouldNotConfirmOrder_AlreadyConfirmedOrder() {
+    // Given
+    // Confirmed and already shipped: a late StockReservedEvent must not move it back
+    Order order = preparePendingOrder(21L, 2121L);
+    assertThat(orderStatusTransitions.transition(order.getId(), OrderStatus.CONFIRMED)).isTrue();
+    assertThat(orderStatusTransitions.transition(order.getId(), OrderStatus.SHIPPED)).isTrue();
+
+    // When
+    orderService.stockReservedEventConsumer().accept(List.of(stockReservedEvent(order)));
+
+    // Then
+    verifyOrderStatus(order, OrderStatus.SHIPPED);
+  }
+
+  @Test
+  void stockReservedEventConsumer_shouldNotConfirmOrder_CancelledOrder() {
+    // Given
+    Order order = preparePendingOrder(10L, 1010L);
+    assertThat(orderStatusTransitions.transition(order.getId(), OrderStatus.CANCELLED)).isTrue();
+
+    // When
+    orderService.stockReservedEventConsumer().accept(List.of(stockReservedEvent(order)));
+
+    // Then
+    verifyOrderStatus(order, OrderStatus.CANCELLED);
+  }
+
+  @Test
+  void stockReservedEventConsumer_shouldNotDoAnything_OrderNotFound() {
+    // Given
+    Order missingOrder = new Order();
+    missingOrder.setId(-1L);
+
+    // When
+    orderService.stockReservedEventConsumer().accept(List.of(stockReservedEvent(missingOrder)));
+
+    // Then
+    assertThat(orderRepository.findById(-1L)).isNotPresent();
+  }
+
+  @Test
+  void orderStatusTransitions_shouldOnlyAllowValidTransitions() {
+    // Given
+    Order order = preparePendingOrder(11L, 1111L);
+
+    // When / Then
+    assertThat(orderStatusTransitions.transition(order.getId(), OrderStatus.SHIPPED)).isFalse();
+    assertThat(orderStatusTransitions.transition(order.getId(), OrderStatus.CONFIRMED)).isTrue();
+    assertThat(orderStatusTransitions.transition(order.getId(), OrderStatus.FAILED)).isFalse();
+    assertThat(orderStatusTransitions.transition(order.getId(), OrderStatus.SHIPPED)).isTrue();
+    assertThat(orderStatusTransitions.transition(order.getId(), OrderStatus.DELIVERED)).isTrue();
+    verifyOrderStatus(order, OrderStatus.DELIVERED);
+  }
+
+  @Test
+  void getOrderById_shouldServeRepeatedReadsFromCache_untilStatusTransition() {
+    // Given
+    Order order = preparePendingOrder(14L, 1414L);
+    OrderCache.Stats before = orderService.getOrderCacheStats();
+
+    // When
+    OrderView first = orderService.getOrderById(order.getId()).block();
+    OrderView second = orderService.getOrderById(order.getId()).block();
+    orderService.stockReservedEventConsumer().accept(List.of(stockReservedEvent(order)));
+    OrderView afterTransition = orderService.getOrderById(order.getId()).block();
+
+    // Then
+    assertNotNull(first);
+    assertThat(first.getStatus()).isEqualTo(OrderStatus.PENDING);
+    assertThat(first.getOrderItems()).hasSize(1);
+    assertThat(second).isSameAs(first);
+    assertNotNull(afterTransition);
+    assertThat(afterTransition.getStatus()).isEqualTo(OrderStatus.CONFIRMED);
+    OrderCache.Stats after = orderService.getOrderCacheStats();
+    assertThat(after.getMisses() - before.getMisses()).isEqualTo(2);
+    assertThat(after.getHits() - before.getHits()).isEqualTo(1);
+  }
+
+  @Test
+  void getOrderHistory_shouldPageThroughCustomerOrdersNewestFirst() {
+    // Given
+    Order oldest = preparePendingOrder(16L, 1616L);
+    Order middle = preparePendingOrder(16L, 1617L);
+    Order newest = preparePendingOrder(16L, 1618L);
+    preparePendingOrder(17L, 1717L);
+
+    // When
+    OrderHistoryPage<OrderSummary> firstPage = orderService.getOrderHistory(16L, null, 2).block();
+    assertNotNull(firstPage);
+    OrderHistoryPage<OrderSummary> secondPage =
+        orderService.getOrderHistory(16L, firstPage.getNextCursor(), 2).block();
+
+    // Then
+    assertThat(firstPage.getOrders())
+        .extracting(OrderSummary::getId)
+        .containsExactly(newest.getId(), middle.getId());
+    assertNotNull(secondPage);
+    assertThat(secondPage.getOrders())
+        .extracting(OrderSummary::getId)
+        .containsExactly(oldest.getId());
+    assertThat(secondPage.getNextCursor()).isNull();
+  }
+
+  @Test
+  void orderReads_shouldLoadItemsWithOneStatementPerFetchPlan() {
+    // Given
+    Order order = preparePendingOrder(18L, 1818L);
+    preparePendingOrder(18L, 1819L);
+    preparePendingOrder(18L, 1820L);
+    Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+    // When / Then
+    // Single order: order and items in one joined query
+    statistics.clear();
+    OrderView view = orderService.getOrderById(order.getId()).block();
+    assertNotNull(view);
+    assertThat(view.getOrderItems()).hasSize(1);
+    assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+    // History page with items: one query for the page, one for the items of all its orders
+    statistics.clear();
+    OrderHistoryPage<OrderView> page =
+        orderService.getOrderHistoryWithItems(18L, null, 10).block();
+    assertNotNull(page);
+    assertThat(page.getOrders())
+        .hasSize(3)
+        .allSatisfy(orderView -> assertThat(orderView.getOrderItems()).hasSize(1));
+    assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+  }
+
+  @Test
+  void streamOrderStatus_shouldEmitCurrentStatusThenCommittedChanges() throws Exception {
+    // Given
+    Order order = preparePendingOrder(15L, 1515L);
+    CompletableFuture<List<OrderStatusChange>> orderChanges =
+        orderService.streamOrderStatus(order.getId()).take(2).collectList().toFuture();
+    CompletableFuture<OrderStatusChange> customerChange =
+        orderService.streamCustomerOrderStatus(15L).next().toFuture();
+
+    // When
+    orderService.stockReservedEventConsumer().accept(List.of(stockReservedEvent(order)));
+
+    // Then
+    assertThat(orderChanges.get(5, TimeUnit.SECONDS))
+        .extracting(OrderStatusChange::getStatus)
+        .containsExactly(OrderStatus.PENDING, OrderStatus.CONFIRMED);
+    assertThat(customerChange.get(5, TimeUnit.SECONDS).getOrderId()).isEqualTo(order.getId());
+  }
+
+  @Test
+  void processedInventoryEventPruner_shouldDeleteOnlyExpiredEvents() {
+    // Given
+    processedInventoryEventRepository.save(
+        new ProcessedInventoryEvent(12L, "StockReservedEvent", LocalDateTime.now().minusDays(30)));
+    ProcessedInventoryEvent recentEvent =
+        processedInventoryEventRepository.save(
+            new ProcessedInventoryEvent(13L, "StockReservedEvent", LocalDateTime.now()));
+
+    // When
+    processedInventoryEventPruner.pruneProcessedEvents();
+
+    // Then
+    assertThat(processedInventoryEventRepository.findAll())
+        .extracting(ProcessedInventoryEvent::getOrderId)
+        .containsExactly(recentEvent.getOrderId());
+  }
+
+  @Test
+  void stockReservationFailedEventConsumer_shouldFailOrder_StockReservationFailedEvent() {
+    // Given
+    Order order = preparePendingOrder(9L, 909L);
+    StockReservationFailedEvent event =
+        new StockReservationFailedEvent(
+            order.getId(), order.getCustomerId(), "Insufficient stock", Collections.emptyList());
+
+    // When
+    orderService.stockReservationFailedEventConsumer().accept(List.of(event));
+
+    // Then
+    verifyOrderStatus(order, OrderStatus.FAILED);
+  }
+
+  @Test
+  void stockReservationFailedEventConsumer_shouldFailOrderOnce_DupStockReservationFailedEvent() {
+    // Given
+    Order order = preparePendingOrder(19L, 1919L);
+    // Processed before, but unknown to the recent-ID cache: only the database insert detects it
+    Order processedOrder = preparePendingOrder(19L, 1920L);
+    processedInventoryEventRepository.save(
+        new ProcessedInventoryEvent(
+            processedOrder.getId(), "StockReservationFailedEvent", LocalDateTime.now()));
+
+    // When
+    // The duplicate arrives both within the same batch and in a later batch
+    orderService
+        .stockReservationFailedEventConsumer()
+        .accept(
+            List.of(
+                stockReservationFailedEvent(order),
+                stockReservationFailedEvent(processedOrder),
+                stockReservationFailedEvent(order)));
+    orderService
+        .stockReservationFailedEventConsumer()
+        .accept(List.of(stockReservationFailedEvent(order)));
+
+    // Then
+    verifyOrderStatus(order, OrderStatus.FAILED);
+    verifyOrderStatus(processedOrder, OrderStatus.PENDING);
+    assertThat(processedInventoryEventRepository.findAll())
+        .extracting(ProcessedInventoryEvent::getOrderId)
+        .containsExactlyInAnyOrder(order.getId(), processedOrder.getId());
+  }
+
+  @Test
+  void stockReservationFailedEventConsumer_shouldNotFailOrder_AlreadyConfirmedOrder() {
+    // Given
+    Order order = preparePendingOrder(22L, 2222L);
+    assertThat(orderStatusTransitions.transition(order.getId(), OrderStatus.CONFIRMED)).isTrue();
+
+    // When
+    orderService
+        .stockReservationFailedEventConsumer()
+        .accept(List.of(stockReservationFailedEvent(order)));
+
+    // Then
+    verifyOrderStatus(order, OrderStatus.CONFIRMED);
+  }
+
+  @Test
+  void stockReservationFailedEventConsumer_shouldNotFailOrder_AlreadyFailedOrder() {
+    // Given
+    // Failed by another path; the event is new, so only the status guard stops the update
+    Order order = preparePendingOrder(23L, 2323L);
+    assertThat(orderStatusTransitions.transition(order.getId(), OrderStatus.FAILED)).isTrue();
+
+    // When
+    int failed = orderHelper.failOrders(List.of(stockReservationFailedEvent(order)));
+
+    // Then
+    assertThat(failed).isZero();
+    verifyOrderStatus(order, OrderStatus.FAILED);
+  }
+
+  @Test
+  void stockReservationFailedEventConsumer_shouldNotDoAnything_OrderNotFound() {
+    // Given
+    Order order = preparePendingOrder(20L, 2020L);
+    Order missingOrder = new Order();
+    missingOrder.setId(-2L);
+    missingOrder.setCustomerId(20L);
+
+    // When
+    // The unknown order does not abort the rest of the batch
+    orderService
+        .stockReservationFailedEventConsumer()
+        .accept(
+            List.of(stockReservationFailedEvent(missingOrder), stockReservationFailedEvent(order)));
+
+    // Then
+    assertThat(orderRepository.findById(-2L)).isNotPresent();
+    assertThat(orderRepository.findAll()).hasSize(1);
+    verifyOrderStatus(order, OrderStatus.FAILED);
+  }
+
+  private void saveOutboxMessage(String aggregateId, String payload, LocalDateTime createdAt) {
+    saveOutboxMessage(aggregateId, "OrderCreatedEvent", payload, createdAt);
+  }
+
+  private void saveOutboxMessage(
+      String aggregateId, String eventType, String payload, LocalDateTime createdAt) {
+    outboxMessageRepository.save(
+        new OutboxMessage(
+            null,
+            "Order",
+            aggregateId,
+            eventType,
+            payload,
+            createdAt,
+            0,
+            createdAt,
+            null));
+  }
+
+  private Order preparePendingOrder(Long customerId, Long productId) {
+    OrderItem item = new OrderItem();
+    item.setProductId(productId);
+    item.setQuantity(1);
+    item.setUnitPrice(BigDecimal.valueOf(10.00));
+    item.setSubtotal(BigDecimal.valueOf(10.00));
+    return orderService.createOrder(customerId, Collections.singletonList(item)).block();
+  }
+
+  private OrderItem orderItem(Long productId, int quantity) {
+    OrderItem item = new OrderItem();
+    item.setProductId(productId);
+    item.setQuantity(quantity);
+    item.setUnitPrice(BigDecimal.valueOf(10.00));
+    item.setSubtotal(BigDecimal.valueOf(10.00 * quantity));
+    return item;
+  }
+
+  private StockReservedEvent stockReservedEvent(Order order) {
+    return new StockReservedEvent(order.getId(), order.getCustomerId(), Collections.emptyList());
+  }
+
+  private StockReservationFailedEvent stockReservationFailedEvent(Order order) {
+    return new StockReservationFailedEvent(
+        order.getId(), order.getCustomerId(), "Insufficient stock", Collections.emptyList());
+  }
+
+  private void verifyOrderStatus(Order order, OrderStatus expectedStatus) {
+    assertThat(orderRepository.findById(order.getId()))
+        .hasValueSatisfying(o -> assertThat(o.getStatus()).isEqualTo(expectedStatus));
+  }
+
+  private Answer<Boolean> publisherConfirm(boolean ack) {
+    return invocation -> {
+      Message<?> message = invocation.getArgument(1);
+      CorrelationData correlationData =
+          (CorrelationData) message.getHeaders().get(AmqpHeaders.PUBLISH_CONFIRM_CORRELATION);
+      correlationData.getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "nack"));
+      return true;
+    };
+  }
 
   private void verifyOrderCreatedEventIsNotPublished() {
     verify(streamBridge, never()).send(any(), any());
@@ -0,0 +1,83 @@
+package com.scalableshop.orderservice;
+
+import com.scalableshop.orderservice.dto.OrderStatusChange;
+import com.scalableshop.orderservice.model.OrderStatus;
+import com.scalableshop.orderservice.service.OrderStatusStream;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/** Fans status changes out to a blocked and a fast subscriber, without Spring or a broker. */
+public class OrderStatusStreamTest {
+
+  private static final Long CUSTOMER_ID = 7L;
+  private static final int CHANGES = 20;
+
+  @Test
+  void publish_shouldNotWaitForBlockedSubscriber() throws Exception {
+    // Given
+    OrderStatusStream stream = new OrderStatusStream(10, 4, 60_000);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch slowBlocked = new CountDownLatch(1);
+    CountDownLatch slowSawLast = new CountDownLatch(1);
+    CountDownLatch fastSawAll = new CountDownLatch(CHANGES);
+    List<Long> slowReceived = new CopyOnWriteArrayList<>();
+    // Stands in for an SSE client whose socket stopped accepting writes
+    Disposable slow =
+        stream
+            .forCustomer(CUSTOMER_ID)
+            .subscribe(
+                change -> {
+                  slowReceived.add(change.getOrderId());
+                  slowBlocked.countDown();
+                  if (change.getOrderId() == CHANGES) {
+                    slowSawLast.countDown();
+                  }
+                  awaitQuietly(release);
+                });
+    Disposable fast = stream.forCustomer(CUSTOMER_ID).subscribe(change -> fastSawAll.countDown());
+
+    // When
+    assertTimeoutPreemptively(
+        Duration.ofSeconds(5),
+        () -> {
+          for (long orderId = 1; orderId <= CHANGES; orderId++) {
+            stream.publishAfterCommit(List.of(change(orderId)));
+          }
+        });
+
+    // Then
+    // The fast subscriber gets every change while the slow one is still blocked on the first
+    assertThat(fastSawAll.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(slowBlocked.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(slowReceived).containsExactly(1L);
+    release.countDown();
+    // Once unblocked, the slow subscriber catches up with the latest changes; older ones it had
+    // no room for are dropped
+    assertThat(slowSawLast.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(slowReceived).hasSizeLessThan(CHANGES).endsWith((long) CHANGES);
+    slow.dispose();
+    fast.dispose();
+  }
+
+  private static OrderStatusChange change(Long orderId) {
+    return new OrderStatusChange(orderId, CUSTOMER_ID, OrderStatus.CONFIRMED, LocalDateTime.now());
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
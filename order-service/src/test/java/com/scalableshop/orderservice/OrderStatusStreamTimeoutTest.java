@@ -0,0 +1,86 @@
+package com.scalableshop.orderservice;
+
+import com.scalableshop.events.event.StockReservedEvent;
+import com.scalableshop.orderservice.model.Order;
+import com.scalableshop.orderservice.model.OrderItem;
+import com.scalableshop.orderservice.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Opens an SSE stream over HTTP with a Spring MVC async request timeout far shorter than the test,
+ * to check that status streams are not cut off by it.
+ */
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+      "spring.mvc.async.request-timeout=200",
+      // Own database, so this context's create-drop leaves the other test context's schema alone
+      "spring.datasource.url=jdbc:h2:mem:orderdb_stream_test;DB_CLOSE_DELAY=-1;MODE=PostgreSQL"
+    })
+@ActiveProfiles("test")
+public class OrderStatusStreamTimeoutTest {
+
+  @Autowired private WebTestClient webTestClient;
+
+  @Autowired private OrderService orderService;
+
+  @MockBean private StreamBridge streamBridge;
+
+  @Test
+  void streamOrderEvents_shouldOutliveMvcAsyncRequestTimeout() throws Exception {
+    // Given
+    OrderItem item = new OrderItem();
+    item.setProductId(2424L);
+    item.setQuantity(1);
+    item.setUnitPrice(BigDecimal.valueOf(10.00));
+    item.setSubtotal(BigDecimal.valueOf(10.00));
+    Order order = orderService.createOrder(24L, Collections.singletonList(item)).block();
+    CompletableFuture<List<ServerSentEvent<String>>> events =
+        webTestClient
+            .get()
+            .uri("/api/orders/{orderId}/events", order.getId())
+            .accept(MediaType.TEXT_EVENT_STREAM)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+            .getResponseBody()
+            .take(2)
+            .collectList()
+            .toFuture();
+
+    // When
+    // Well past the 200 ms async request timeout
+    Thread.sleep(1000);
+    orderService
+        .stockReservedEventConsumer()
+        .accept(
+            List.of(
+                new StockReservedEvent(
+                    order.getId(), order.getCustomerId(), Collections.emptyList())));
+
+    // Then
+    assertThat(events.get(5, TimeUnit.SECONDS))
+        .extracting(ServerSentEvent::data)
+        .satisfiesExactly(
+            pending -> assertThat(pending).contains("\"status\":\"PENDING\""),
+            confirmed -> assertThat(confirmed).contains("\"status\":\"CONFIRMED\""));
+  }
+}
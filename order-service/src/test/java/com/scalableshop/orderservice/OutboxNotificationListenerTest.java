@@ -0,0 +1,85 @@
+package com.scalableshop.orderservice;
+
+import com.scalableshop.orderservice.service.OutboxNotificationListener;
+import com.scalableshop.orderservice.service.OutboxRelaySignal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+/**
+ * Exercises the notify relay mode against a stand-in for the PostgreSQL JDBC driver, so it runs
+ * without a database server.
+ */
+public class OutboxNotificationListenerTest {
+
+  private DataSource dataSource;
+  private Connection connection;
+  private Statement statement;
+  private PGConnection pgConnection;
+  private OutboxRelaySignal outboxRelaySignal;
+  private OutboxNotificationListener listener;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    dataSource = mock(DataSource.class);
+    connection = mock(Connection.class);
+    statement = mock(Statement.class);
+    pgConnection = mock(PGConnection.class);
+    outboxRelaySignal = spy(new OutboxRelaySignal());
+
+    when(dataSource.getConnection()).thenReturn(connection);
+    when(connection.createStatement()).thenReturn(statement);
+    when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+
+    listener = new OutboxNotificationListener(dataSource, outboxRelaySignal, 10, 10);
+  }
+
+  @Test
+  void listener_shouldListen_thenWakeRelayOnNotification() throws Exception {
+    // Given
+    AtomicBoolean notified = new AtomicBoolean();
+    when(pgConnection.getNotifications(anyInt()))
+        .thenAnswer(
+            invocation ->
+                notified.compareAndSet(false, true)
+                    ? new PGNotification[] {mock(PGNotification.class)}
+                    : new PGNotification[0]);
+
+    // When
+    listener.start();
+
+    // Then
+    // One catch-up wake-up on connect, one for the notification
+    verify(outboxRelaySignal, timeout(2000).atLeast(2)).wakeUp();
+    listener.stop();
+    // The trigger comes with the schema; the listener only subscribes
+    verify(statement).execute("LISTEN outbox_messages");
+    verify(statement, never()).execute(startsWith("CREATE"));
+  }
+
+  @Test
+  void listener_shouldNotWakeRelay_whenNoNotificationArrives() throws Exception {
+    // Given
+    when(pgConnection.getNotifications(anyInt())).thenReturn(null);
+
+    // When
+    listener.start();
+    outboxRelaySignal.await(2000); // Consume the catch-up wake-up on connect
+    boolean woken = outboxRelaySignal.await(100);
+    listener.stop();
+
+    // Then
+    assertThat(woken).isFalse();
+  }
+}
@@ -0,0 +1,96 @@
+package com.scalableshop.orderservice;
+
+import com.scalableshop.orderservice.service.OutboxMessageRelayer;
+import com.scalableshop.orderservice.service.OutboxRelayLoop;
+import com.scalableshop.orderservice.service.OutboxRelaySignal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/** Exercises the relay loop and its wake-up signal with a stubbed relayer, without a broker. */
+public class OutboxRelayLoopTest {
+
+  private OutboxMessageRelayer outboxMessageRelayer;
+  private OutboxRelaySignal outboxRelaySignal;
+  private OutboxRelayLoop loop;
+
+  @BeforeEach
+  public void setup() {
+    outboxMessageRelayer = mock(OutboxMessageRelayer.class);
+    outboxRelaySignal = spy(new OutboxRelaySignal());
+    when(outboxMessageRelayer.getBatchSize()).thenReturn(10);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    if (loop != null) {
+      loop.stop();
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  void signal_shouldWakeRelayOnlyOnceTransactionCommits() throws Exception {
+    // Given
+    TransactionSynchronizationManager.initSynchronization();
+
+    // When
+    outboxRelaySignal.wakeUpAfterCommit();
+    boolean wokenBeforeCommit = outboxRelaySignal.await(50);
+    TransactionSynchronizationManager.getSynchronizations()
+        .forEach(TransactionSynchronization::afterCommit);
+    TransactionSynchronizationManager.clearSynchronization();
+
+    // Then
+    assertThat(wokenBeforeCommit).isFalse();
+    assertThat(outboxRelaySignal.await(50)).isTrue();
+    // Several signals between two drains collapse into one wake-up
+    outboxRelaySignal.wakeUp();
+    outboxRelaySignal.wakeUp();
+    assertThat(outboxRelaySignal.await(50)).isTrue();
+    assertThat(outboxRelaySignal.await(50)).isFalse();
+  }
+
+  @Test
+  void loop_shouldRelayOnSignal_WithoutWaitingForThePoll() {
+    // Given
+    // A poll delay far longer than the test, so only the signal can trigger a second run
+    when(outboxMessageRelayer.processOutboxMessages()).thenReturn(0);
+    loop = new OutboxRelayLoop(outboxMessageRelayer, outboxRelaySignal, 60_000, 60_000);
+    loop.start();
+    verify(outboxMessageRelayer, timeout(2000).times(1)).processOutboxMessages();
+
+    // When
+    outboxRelaySignal.wakeUpAfterCommit();
+
+    // Then
+    verify(outboxMessageRelayer, timeout(2000).times(2)).processOutboxMessages();
+  }
+
+  @Test
+  void loop_shouldBackOffWhileIdle_AndResetWhenThereIsWork() throws Exception {
+    // Given
+    // Idle runs, a partial batch, an idle run, a full batch, then idle again
+    when(outboxMessageRelayer.processOutboxMessages()).thenReturn(0, 0, 0, 0, 1, 0, 10, 0);
+    loop = new OutboxRelayLoop(outboxMessageRelayer, outboxRelaySignal, 1, 8);
+
+    // When
+    loop.start();
+    ArgumentCaptor<Long> delays = ArgumentCaptor.forClass(Long.class);
+    verify(outboxRelaySignal, timeout(2000).atLeast(8)).await(delays.capture());
+    loop.stop();
+
+    // Then
+    // Doubles up to the maximum while idle, drops to the minimum after a partial batch and does
+    // not wait at all after a full one
+    assertThat(delays.getAllValues().subList(0, 8)).containsExactly(2L, 4L, 8L, 8L, 1L, 2L, 1L, 2L);
+  }
+}
@@ -2,28 +2,50 @@ package com.scalableshop.productinventoryservice.controller;
 
 import com.scalableshop.productinventoryservice.model.InventoryItem;
 import com.scalableshop.productinventoryservice.service.InventoryService;
+import com.scalableshop.productinventoryservice.service.InventorySnapshotCache;
+import com.scalableshop.productinventoryservice.service.StockAdjustmentCoalescer;
+import com.scalableshop.productinventoryservice.service.StockImportService;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Mono;
 
+import java.io.InputStream;
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/inventory")
 public class InventoryController {
 
   private static final Logger log = LoggerFactory.getLogger(InventoryController.class);
 
+  // Upper bound on the product IDs of one bulk stock request
+  private static final int MAX_BULK_PRODUCT_IDS = 200;
+
+  // Upper bound on the adjustments of one request
+  private static final int MAX_ADJUSTMENTS = 1000;
+
+  // Upper bound on the units one adjustment may add or remove
+  private static final int MAX_ADJUSTMENT_DELTA = 1_000_000;
+
+  private static final String CSV_MEDIA_TYPE = "text/csv";
+
   private final InventoryService inventoryService;
+  private final StockImportService stockImportService;
 
   @Autowired
-  public InventoryController(InventoryService inventoryService) {
+  public InventoryController(
+      InventoryService inventoryService, StockImportService stockImportService) {
     this.inventoryService = inventoryService;
+    this.stockImportService = stockImportService;
   }
 
   /**
@@ -107,6 +129,115 @@ public class InventoryController {
             });
   }
 
+  /**
+   * Endpoint to get the stock levels of several products at once, e.g. for "in stock" badges. GET
+   * /api/inventory/stock?productIds=1,2,3. Products without inventory are left out of the result.
+   */
+  @GetMapping("/stock")
+  public Mono<ResponseEntity<List<InventoryItem>>> getProductsStock(
+      @RequestParam List<Long> productIds) {
+    if (productIds.isEmpty() || productIds.size() > MAX_BULK_PRODUCT_IDS) {
+      return Mono.just(
+          ResponseEntity.badRequest()
+              .header(
+                  "X-Error-Message",
+                  "Between 1 and " + MAX_BULK_PRODUCT_IDS + " product IDs are required")
+              .build());
+    }
+    return inventoryService
+        .getInventoryByProductIds(productIds.stream().distinct().toList())
+        .map(ResponseEntity::ok)
+        .onErrorResume(
+            e -> {
+              log.error("Error getting stock for products {}: {}", productIds, e.getMessage());
+              return Mono.just(
+                  ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                      .header("X-Error-Message", e.getMessage())
+                      .build());
+            });
+  }
+
+  /** Endpoint to get inventory cache hit/miss counters. GET /api/inventory/cache/stats */
+  @GetMapping("/cache/stats")
+  public ResponseEntity<InventorySnapshotCache.Stats> getInventoryCacheStats() {
+    return ResponseEntity.ok(inventoryService.getInventoryCacheStats());
+  }
+
+  /**
+   * Endpoint to import the stock levels of many products from one streamed body, e.g. a nightly
+   * warehouse sync. POST /api/inventory/import with Content-Type text/csv (lines of
+   * "productId,quantity") or application/x-ndjson (lines of {"productId":1,"quantity":5}). Sets the
+   * available quantity of each product, creating missing ones. Runs on the request thread, which
+   * reads the body as it arrives instead of buffering it.
+   */
+  @PostMapping(
+      value = "/import",
+      consumes = {CSV_MEDIA_TYPE, MediaType.APPLICATION_NDJSON_VALUE})
+  public ResponseEntity<StockImportService.ImportProgress> importStock(
+      @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body) {
+    StockImportService.Format format =
+        MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.APPLICATION_NDJSON)
+            ? StockImportService.Format.NDJSON
+            : StockImportService.Format.CSV;
+    log.info("Received stock import request ({}).", format);
+    StockImportService.ImportProgress progress = stockImportService.importStock(body, format);
+    HttpStatus status =
+        progress.getStatus() == StockImportService.Status.COMPLETED
+            ? HttpStatus.OK
+            : HttpStatus.INTERNAL_SERVER_ERROR;
+    return ResponseEntity.status(status).body(progress);
+  }
+
+  /** Endpoint to get the progress of running and recent imports. GET /api/inventory/imports */
+  @GetMapping("/imports")
+  public ResponseEntity<List<StockImportService.ImportProgress>> getStockImports() {
+    return ResponseEntity.ok(stockImportService.getImports());
+  }
+
+  /**
+   * Endpoint to apply a batch of stock deltas, e.g. returns and restocks. POST
+   * /api/inventory/adjustments Body: {"adjustments": [{"productId": 1, "delta": 3}]}. Each delta is
+   * applied unless it would make the available stock negative; the outcome of each is returned in
+   * request order. A delta may add or remove at most 1,000,000 units.
+   */
+  @PostMapping("/adjustments")
+  public Mono<ResponseEntity<List<StockAdjustmentCoalescer.AdjustmentResult>>> adjustStock(
+      @RequestBody StockAdjustmentsRequest request) {
+    List<StockAdjustmentCoalescer.Adjustment> adjustments = request.getAdjustments();
+    if (adjustments == null
+        || adjustments.isEmpty()
+        || adjustments.size() > MAX_ADJUSTMENTS
+        || adjustments.stream()
+            .anyMatch(
+                adjustment ->
+                    adjustment.getProductId() == null
+                        || adjustment.getDelta() == null
+                        || adjustment.getDelta() == 0
+                        || Math.abs((long) adjustment.getDelta()) > MAX_ADJUSTMENT_DELTA)) {
+      return Mono.just(
+          ResponseEntity.badRequest()
+              .header(
+                  "X-Error-Message",
+                  "Between 1 and "
+                      + MAX_ADJUSTMENTS
+                      + " adjustments with a productId and a non-zero delta of at most "
+                      + MAX_ADJUSTMENT_DELTA
+                      + " units are required")
+              .build());
+    }
+    return inventoryService
+        .applyAdjustments(adjustments)
+        .map(ResponseEntity::ok)
+        .onErrorResume(
+            e -> {
+              log.error("Error applying stock adjustments: {}", e.getMessage());
+              return Mono.just(
+                  ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                      .header("X-Error-Message", e.getMessage())
+                      .build());
+            });
+  }
+
   @Data
   @NoArgsConstructor
   @AllArgsConstructor
@@ -114,4 +245,11 @@ public class InventoryController {
     private Integer quantityChange;
     private Long productId; // Add productId to request body for initialization/direct update
   }
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class StockAdjustmentsRequest {
+    private List<StockAdjustmentCoalescer.Adjustment> adjustments;
+  }
 }
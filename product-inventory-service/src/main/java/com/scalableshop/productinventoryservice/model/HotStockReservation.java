@@ -0,0 +1,50 @@
+package com.scalableshop.productinventoryservice.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Durable log entry of a reservation decided by the in-memory hot-product ledger. Entries are
+ * append-only, so concurrent reservations never wait on each other's row locks. They are folded
+ * into inventory_items and deleted by the ledger flusher.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "hot_stock_reservations")
+public class HotStockReservation {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(nullable = false)
+  private Long orderId;
+
+  @Column(nullable = false)
+  private Long productId;
+
+  @Column(nullable = false)
+  private Integer quantity;
+
+  @Column(nullable = false)
+  private LocalDateTime reservedAt;
+
+  public HotStockReservation(
+      Long orderId, Long productId, Integer quantity, LocalDateTime reservedAt) {
+    this.orderId = orderId;
+    this.productId = productId;
+    this.quantity = quantity;
+    this.reservedAt = reservedAt;
+  }
+}
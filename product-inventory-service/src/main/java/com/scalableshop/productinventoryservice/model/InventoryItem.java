@@ -1,19 +1,25 @@
 package com.scalableshop.productinventoryservice.model;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
 @Table(
-    name =
-        "inventory_items") // Renamed from 'inventory' to avoid conflict with potential 'inventory'
-// concept
+    // Renamed from 'inventory' to avoid conflict with potential 'inventory' concept
+    name = "inventory_items",
+    // product_id is the lookup key of every reservation and stock query; the unique constraint
+    // also gives it an index
+    uniqueConstraints = {
+      @UniqueConstraint(name = "uk_inventory_items_product_id", columnNames = "productId")
+    })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -22,6 +28,7 @@ public class InventoryItem {
   @GeneratedValue(strategy = GenerationType.IDENTITY)
   private Long id; // Internal ID for this inventory record
 
+  @Column(nullable = false)
   private Long
       productId; // The ID of the product this inventory item refers to (from Catalog Service)
   private Integer quantityAvailable;
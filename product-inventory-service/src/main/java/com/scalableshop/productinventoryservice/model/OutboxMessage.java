@@ -0,0 +1,77 @@
+package com.scalableshop.productinventoryservice.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/** A stock event written in the same transaction as the reservation that produced it. */
+@Entity
+@Table(
+    name = "outbox_messages",
+    // Support the relayer's claim query: due messages in creation order, and the lookup of an
+    // earlier message of the same order
+    indexes = {
+      @Index(name = "idx_outbox_next_attempt_at", columnList = "next_attempt_at"),
+      @Index(name = "idx_outbox_aggregate_created_at", columnList = "aggregate_id, created_at")
+    })
+@Getter
+@NoArgsConstructor
+public class OutboxMessage {
+
+  private static final int MAX_ERROR_LENGTH = 1000;
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.UUID)
+  private UUID id;
+
+  @Column(name = "aggregate_id", nullable = false)
+  private String aggregateId; // ID of the order the event is about
+
+  @Column(name = "event_type", nullable = false)
+  private String eventType; // e.g., "StockReservedEvent"
+
+  @Column(name = "payload", columnDefinition = "TEXT", nullable = false)
+  private String payload; // JSON string of the event data
+
+  @Column(name = "created_at", nullable = false)
+  private LocalDateTime createdAt = LocalDateTime.now();
+
+  @Column(name = "attempts", nullable = false)
+  private int attempts;
+
+  @Column(name = "next_attempt_at", nullable = false)
+  private LocalDateTime nextAttemptAt = createdAt; // Due immediately
+
+  @Column(name = "last_error", length = MAX_ERROR_LENGTH)
+  private String lastError;
+
+  @Column(name = "parked_at")
+  private LocalDateTime parkedAt; // Set once the relayer gives up; parked messages are not claimed
+
+  public OutboxMessage(String aggregateId, String eventType, String payload) {
+    this.aggregateId = aggregateId;
+    this.eventType = eventType;
+    this.payload = payload;
+  }
+
+  public void recordFailedAttempt(String error, LocalDateTime nextAttemptAt) {
+    this.attempts++;
+    this.nextAttemptAt = nextAttemptAt;
+    this.lastError =
+        error != null && error.length() > MAX_ERROR_LENGTH
+            ? error.substring(0, MAX_ERROR_LENGTH)
+            : error;
+  }
+
+  public void park(LocalDateTime parkedAt) {
+    this.parkedAt = parkedAt;
+  }
+}
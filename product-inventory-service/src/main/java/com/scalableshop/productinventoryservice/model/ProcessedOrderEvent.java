@@ -4,6 +4,7 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import jakarta.persistence.Column;
 import java.time.LocalDateTime;
@@ -15,7 +16,10 @@ import lombok.NoArgsConstructor;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "processed_order_events") // Table to store processed event IDs
+@Table(
+    name = "processed_order_events", // Table to store processed event IDs
+    // Supports pruning of rows older than the retention period
+    indexes = {@Index(name = "idx_processed_order_events_processed_at", columnList = "processedAt")})
 public class ProcessedOrderEvent {
 
   @Id
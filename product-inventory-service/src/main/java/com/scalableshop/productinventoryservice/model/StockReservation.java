@@ -0,0 +1,58 @@
+package com.scalableshop.productinventoryservice.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Stock of one product held for an order. Rows are written with the reservation and deleted when
+ * the stock is released, on cancellation of the order or once {@code expiresAt} has passed.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(
+    name = "stock_reservations",
+    // The unique key also serves lookups by order ID
+    uniqueConstraints =
+        @UniqueConstraint(
+            name = "uk_stock_reservations_order_product",
+            columnNames = {"order_id", "product_id"}),
+    // Supports the expiry sweep
+    indexes = {@Index(name = "idx_stock_reservations_expires_at", columnList = "expires_at")})
+public class StockReservation {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(name = "order_id", nullable = false)
+  private Long orderId;
+
+  @Column(name = "product_id", nullable = false)
+  private Long productId;
+
+  @Column(nullable = false)
+  private Integer quantity;
+
+  @Column(name = "expires_at")
+  private LocalDateTime expiresAt; // Null when reservations do not expire
+
+  public StockReservation(Long orderId, Long productId, Integer quantity, LocalDateTime expiresAt) {
+    this.orderId = orderId;
+    this.productId = productId;
+    this.quantity = quantity;
+    this.expiresAt = expiresAt;
+  }
+}
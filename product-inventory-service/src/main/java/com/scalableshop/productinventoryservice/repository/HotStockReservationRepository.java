@@ -0,0 +1,35 @@
+package com.scalableshop.productinventoryservice.repository;
+
+import com.scalableshop.productinventoryservice.model.HotStockReservation;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface HotStockReservationRepository extends JpaRepository<HotStockReservation, Long> {
+
+  // Claims the oldest log entries for a flush. A lock timeout of -2 makes Hibernate emit
+  // "FOR UPDATE SKIP LOCKED" on PostgreSQL, so two flushes never fold the same entry twice.
+  // H2 in tests falls back to a plain "FOR UPDATE".
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+  @Query("SELECT r FROM HotStockReservation r ORDER BY r.id ASC")
+  List<HotStockReservation> claimOldest(Pageable pageable);
+
+  // Stock still available once the logged but not yet flushed reservations are taken out. A
+  // single statement, so a concurrent flush cannot be counted twice or not at all.
+  @Query(
+      "SELECT i.quantityAvailable - COALESCE("
+          + "(SELECT SUM(r.quantity) FROM HotStockReservation r WHERE r.productId = i.productId), 0) "
+          + "FROM InventoryItem i WHERE i.productId = :productId")
+  Optional<Long> findLedgerAvailable(@Param("productId") Long productId);
+}
@@ -1,12 +1,67 @@
 package com.scalableshop.productinventoryservice.repository;
 
 import com.scalableshop.productinventoryservice.model.InventoryItem;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface InventoryItemRepository extends JpaRepository<InventoryItem, Long> {
   Optional<InventoryItem> findByProductId(Long productId);
+
+  List<InventoryItem> findAllByProductIdIn(Collection<Long> productIds);
+
+  // Bulk read for reservation: SELECT ... WHERE product_id IN (...) ORDER BY product_id FOR UPDATE.
+  // The ORDER BY fixes the order in which row locks are taken.
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query(
+      "SELECT i FROM InventoryItem i WHERE i.productId IN :productIds ORDER BY i.productId ASC")
+  List<InventoryItem> findAllByProductIdInForUpdate(
+      @Param("productIds") Collection<Long> productIds);
+
+  // Creates the inventory row unless one exists for the product. Returns 1 if it was created.
+  @Modifying
+  @Query(
+      value =
+          "INSERT INTO inventory_items (product_id, quantity_available, quantity_reserved) "
+              + "VALUES (:productId, :quantity, 0) ON CONFLICT DO NOTHING",
+      nativeQuery = true)
+  int insertIfAbsent(@Param("productId") Long productId, @Param("quantity") int quantity);
+
+  // Sets the available stock only, like the bulk import: units of open stock_reservations stay
+  // reserved, so releasing them later cannot drive quantity_reserved negative.
+  @Modifying
+  @Query(
+      "UPDATE InventoryItem i SET i.quantityAvailable = :quantity WHERE i.productId = :productId")
+  int setStock(@Param("productId") Long productId, @Param("quantity") int quantity);
+
+  // Applies the coalesced reservations of one product in a single atomic statement
+  @Modifying
+  @Query(
+      "UPDATE InventoryItem i SET i.quantityAvailable = i.quantityAvailable - :quantity, "
+          + "i.quantityReserved = i.quantityReserved + :quantity WHERE i.productId = :productId")
+  int applyReservations(@Param("productId") Long productId, @Param("quantity") int quantity);
+
+  // Returns released reservations of one product to the available stock in one atomic statement
+  @Modifying
+  @Query(
+      "UPDATE InventoryItem i SET i.quantityAvailable = i.quantityAvailable + :quantity, "
+          + "i.quantityReserved = i.quantityReserved - :quantity WHERE i.productId = :productId")
+  int releaseReservations(@Param("productId") Long productId, @Param("quantity") int quantity);
+
+  // Adds a (possibly coalesced) delta to the available stock in one atomic statement, unless the
+  // result would be negative. Returns 0 if the product is unknown or the stock is insufficient.
+  @Modifying
+  @Query(
+      "UPDATE InventoryItem i SET i.quantityAvailable = i.quantityAvailable + :delta "
+          + "WHERE i.productId = :productId AND i.quantityAvailable + :delta >= 0")
+  int adjustAvailable(@Param("productId") Long productId, @Param("delta") int delta);
 }
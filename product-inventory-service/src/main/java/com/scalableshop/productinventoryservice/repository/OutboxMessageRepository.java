@@ -0,0 +1,34 @@
+package com.scalableshop.productinventoryservice.repository;
+
+import com.scalableshop.productinventoryservice.model.OutboxMessage;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, UUID> {
+
+  // Claims the oldest due messages. A lock timeout of -2 (LockOptions.SKIP_LOCKED) renders as
+  // "FOR UPDATE SKIP LOCKED" on PostgreSQL, so several inventory instances relay disjoint batches.
+  // H2 in tests falls back to a plain "FOR UPDATE".
+  // Only the oldest message of an order is claimed, so a later one waits while an earlier one is
+  // locked in flight on another instance, waits for a retry or is parked.
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+  @Query(
+      "SELECT m FROM OutboxMessage m WHERE m.nextAttemptAt <= :now AND m.parkedAt IS NULL"
+          + " AND NOT EXISTS (SELECT e.id FROM OutboxMessage e"
+          + " WHERE e.aggregateId = m.aggregateId AND e.createdAt < m.createdAt)"
+          + " ORDER BY m.createdAt ASC, m.id ASC")
+  List<OutboxMessage> claimBatch(@Param("now") LocalDateTime now, Pageable pageable);
+}
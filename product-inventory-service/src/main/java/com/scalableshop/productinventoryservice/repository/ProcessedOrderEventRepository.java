@@ -1,13 +1,37 @@
 package com.scalableshop.productinventoryservice.repository;
 
 import com.scalableshop.productinventoryservice.model.ProcessedOrderEvent;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ProcessedOrderEventRepository extends JpaRepository<ProcessedOrderEvent, Long> {
   // We might not directly use findByOrderId, but it's good practice for potential future needs.
   Optional<ProcessedOrderEvent> findByOrderId(Long orderId);
+
+  @Query("SELECT e.orderId FROM ProcessedOrderEvent e WHERE e.orderId IN :orderIds")
+  List<Long> findProcessedOrderIds(@Param("orderIds") Collection<Long> orderIds);
+
+  // Authoritative idempotency check. Returns 1 if the order was recorded, 0 if it already was.
+  // A duplicate is reported through the row count instead of a constraint violation.
+  @Modifying
+  @Query(
+      value =
+          "INSERT INTO processed_order_events (order_id, processed_at) "
+              + "VALUES (:orderId, :processedAt) ON CONFLICT DO NOTHING",
+      nativeQuery = true)
+  int insertIfAbsent(
+      @Param("orderId") Long orderId, @Param("processedAt") LocalDateTime processedAt);
+
+  @Query("SELECT e.id FROM ProcessedOrderEvent e WHERE e.processedAt < :cutoff")
+  List<Long> findIdsProcessedBefore(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
 }
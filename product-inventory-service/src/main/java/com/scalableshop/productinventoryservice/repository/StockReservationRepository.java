@@ -0,0 +1,29 @@
+package com.scalableshop.productinventoryservice.repository;
+
+import com.scalableshop.productinventoryservice.model.StockReservation;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface StockReservationRepository extends JpaRepository<StockReservation, Long> {
+
+  List<StockReservation> findByOrderId(Long orderId);
+
+  // Locks the reservations being released, so a cancellation and an expiry of the same order
+  // cannot both return its stock: the second one waits and then finds the rows deleted.
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT r FROM StockReservation r WHERE r.orderId IN :orderIds ORDER BY r.id ASC")
+  List<StockReservation> findAllByOrderIdInForUpdate(@Param("orderIds") Collection<Long> orderIds);
+
+  @Query("SELECT DISTINCT r.orderId FROM StockReservation r WHERE r.expiresAt <= :now")
+  List<Long> findExpiredOrderIds(@Param("now") LocalDateTime now, Pageable pageable);
+}
@@ -0,0 +1,275 @@
+package com.scalableshop.productinventoryservice.service;
+
+import com.scalableshop.productinventoryservice.model.HotStockReservation;
+import com.scalableshop.productinventoryservice.repository.HotStockReservationRepository;
+import com.scalableshop.productinventoryservice.repository.InventoryItemRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Optional in-memory ledger for hot products, configured with {@code
+ * inventory.hot-ledger.product-ids}. During a flash sale every order hits the same few
+ * inventory_items rows and serializes on their row locks. For the listed products, reservations
+ * are instead decided against a {@link StripedStockCounter} and durably logged as append-only
+ * {@link HotStockReservation} rows in the reserving transaction. A scheduled flusher folds the log
+ * into inventory_items, one UPDATE per product per batch.
+ *
+ * <p>A counter is loaded on first use from inventory_items minus the unflushed log, so a restart
+ * loses nothing. Setting or adjusting the stock of a hot product evicts its counter, which is
+ * reloaded on the next reservation; do this outside peak traffic, as a reservation still in
+ * flight during the reload is not seen by the new counter.
+ *
+ * <p>The counters live in this JVM, so the service must run as a single instance while {@code
+ * inventory.hot-ledger.product-ids} is set. A second instance would take the same stock from its
+ * own counter, or from inventory_items before the log is folded into it, and oversell. Only the
+ * flush is safe to run concurrently, as each flush claims the log entries it folds.
+ */
+@Component
+public class HotStockLedger {
+
+  private static final Logger log = LoggerFactory.getLogger(HotStockLedger.class);
+
+  private final HotStockReservationRepository hotStockReservationRepository;
+  private final InventoryItemRepository inventoryItemRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final InventorySnapshotCache inventorySnapshotCache;
+  private final Set<Long> hotProductIds;
+  private final int stripeCount;
+  private final int flushBatchSize;
+  private final Map<Long, StripedStockCounter> counters = new ConcurrentHashMap<>();
+
+  public HotStockLedger(
+      HotStockReservationRepository hotStockReservationRepository,
+      InventoryItemRepository inventoryItemRepository,
+      TransactionTemplate transactionTemplate,
+      InventorySnapshotCache inventorySnapshotCache,
+      @Value("${inventory.hot-ledger.product-ids:}") Set<Long> hotProductIds,
+      @Value("${inventory.hot-ledger.stripes:0}") int stripes,
+      @Value("${inventory.hot-ledger.flush-batch-size:1000}") int flushBatchSize) {
+    this.hotStockReservationRepository = hotStockReservationRepository;
+    this.inventoryItemRepository = inventoryItemRepository;
+    this.transactionTemplate = transactionTemplate;
+    this.inventorySnapshotCache = inventorySnapshotCache;
+    this.hotProductIds = Set.copyOf(hotProductIds);
+    // One stripe per core unless configured otherwise
+    this.stripeCount = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors();
+    this.flushBatchSize = flushBatchSize;
+  }
+
+  public boolean isHot(Long productId) {
+    return hotProductIds.contains(productId);
+  }
+
+  /**
+   * Takes stock of hot products in memory, all or nothing. The units stay taken if the current
+   * transaction commits and are given back if it does not, unless {@link Reservation#giveBack()}
+   * already returned them.
+   *
+   * @return the reservation, or empty if a product has no inventory or not enough stock
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public Optional<Reservation> tryTake(Map<Long, Integer> quantityByProduct) {
+    Reservation reservation = new Reservation();
+    for (Map.Entry<Long, Integer> requested : quantityByProduct.entrySet()) {
+      StripedStockCounter counter = counterFor(requested.getKey());
+      if (counter == null || !counter.tryTake(requested.getValue())) {
+        reservation.giveBack();
+        return Optional.empty();
+      }
+      reservation.taken.put(requested.getKey(), requested.getValue());
+      reservation.counters.add(counter);
+    }
+    giveBackOnRollback(reservation);
+    return Optional.of(reservation);
+  }
+
+  /**
+   * Takes as much of the requested stock of hot products as is available, up to the requested
+   * quantity of each; products without inventory or stock are left out of the reservation. The
+   * units are kept or given back like those taken by {@link #tryTake(Map)}.
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public Reservation takeUpTo(Map<Long, Integer> quantityByProduct) {
+    Reservation reservation = new Reservation();
+    for (Map.Entry<Long, Integer> requested : quantityByProduct.entrySet()) {
+      StripedStockCounter counter = counterFor(requested.getKey());
+      if (counter == null) {
+        continue;
+      }
+      // Concurrent takes can shrink the stock between reading and taking it, so retry with less
+      int quantity = Math.min(requested.getValue(), counter.available());
+      while (quantity > 0 && !counter.tryTake(quantity)) {
+        quantity = Math.min(quantity - 1, counter.available());
+      }
+      if (quantity > 0) {
+        reservation.taken.put(requested.getKey(), quantity);
+        reservation.counters.add(counter);
+      }
+    }
+    giveBackOnRollback(reservation);
+    return reservation;
+  }
+
+  /** Durably logs a reservation for the order in the current transaction. */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void log(Long orderId, Reservation reservation) {
+    LocalDateTime now = LocalDateTime.now();
+    List<HotStockReservation> entries = new ArrayList<>();
+    reservation.taken.forEach(
+        (productId, quantity) ->
+            entries.add(new HotStockReservation(orderId, productId, quantity, now)));
+    hotStockReservationRepository.saveAll(entries);
+  }
+
+  /** Stock of a hot product still available in the ledger, if the product has inventory. */
+  public OptionalInt getAvailable(Long productId) {
+    StripedStockCounter counter = counterFor(productId);
+    return counter == null ? OptionalInt.empty() : OptionalInt.of(counter.available());
+  }
+
+  /**
+   * Drops the counter of a hot product once the current transaction commits, after its stock was
+   * changed outside the ledger.
+   */
+  public void evictAfterCommit(Long productId) {
+    if (!isHot(productId)) {
+      return;
+    }
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      counters.remove(productId);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            counters.remove(productId);
+          }
+        });
+  }
+
+  /**
+   * Gives released units of a hot product back to its counter once the current transaction, which
+   * returns them to inventory_items, commits. A counter not loaded yet reads them from the table.
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void releaseAfterCommit(Long productId, int quantity) {
+    if (!isHot(productId)) {
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            StripedStockCounter counter = counters.get(productId);
+            if (counter != null) {
+              counter.release(quantity);
+            }
+          }
+        });
+  }
+
+  /**
+   * Folds logged reservations into inventory_items, coalesced per product. Entries are claimed
+   * with SKIP LOCKED, so a concurrent flush moves on to the next ones instead of folding them too.
+   */
+  @Scheduled(fixedDelayString = "${inventory.hot-ledger.flush-interval-ms:200}")
+  public void flush() {
+    if (hotProductIds.isEmpty()) {
+      return;
+    }
+    int flushed = 0;
+    int batch;
+    do {
+      batch =
+          transactionTemplate.execute(
+              status -> {
+                List<HotStockReservation> reservations =
+                    hotStockReservationRepository.claimOldest(PageRequest.of(0, flushBatchSize));
+                Map<Long, Integer> quantityByProduct = new TreeMap<>();
+                for (HotStockReservation reservation : reservations) {
+                  quantityByProduct.merge(
+                      reservation.getProductId(), reservation.getQuantity(), Integer::sum);
+                }
+                quantityByProduct.forEach(inventoryItemRepository::applyReservations);
+                inventorySnapshotCache.evictAfterCommit(List.copyOf(quantityByProduct.keySet()));
+                hotStockReservationRepository.deleteAllInBatch(reservations);
+                return reservations.size();
+              });
+      flushed += batch;
+    } while (batch == flushBatchSize);
+
+    if (flushed > 0) {
+      log.debug("HotStockLedger: Flushed {} hot-product reservations.", flushed);
+    }
+  }
+
+  private static void giveBackOnRollback(Reservation reservation) {
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCompletion(int status) {
+            if (status != STATUS_COMMITTED) {
+              reservation.giveBack();
+            }
+          }
+        });
+  }
+
+  private StripedStockCounter counterFor(Long productId) {
+    // No mapping is stored when the product has no inventory row
+    return counters.computeIfAbsent(
+        productId,
+        id ->
+            hotStockReservationRepository
+                .findLedgerAvailable(id)
+                .map(available -> new StripedStockCounter(stripeCount, Math.toIntExact(available)))
+                .orElse(null));
+  }
+
+  /** Units of hot products taken in memory by {@link #tryTake(Map)} or {@link #takeUpTo(Map)}. */
+  public static final class Reservation {
+    private final Map<Long, Integer> taken = new LinkedHashMap<>();
+    private final List<StripedStockCounter> counters = new ArrayList<>();
+    private boolean givenBack;
+
+    private Reservation() {}
+
+    public Map<Long, Integer> getTaken() {
+      return Collections.unmodifiableMap(taken);
+    }
+
+    /** Returns the units to the ledger. Does nothing if they were already returned. */
+    public synchronized void giveBack() {
+      if (givenBack) {
+        return;
+      }
+      givenBack = true;
+      int i = 0;
+      for (Integer quantity : taken.values()) {
+        counters.get(i++).release(quantity);
+      }
+    }
+  }
+}
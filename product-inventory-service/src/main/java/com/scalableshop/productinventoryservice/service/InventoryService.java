@@ -1,5 +1,6 @@
 package com.scalableshop.productinventoryservice.service;
 
+import com.scalableshop.events.event.OrderCancelledEvent;
 import com.scalableshop.events.event.OrderCreatedEvent;
 import com.scalableshop.events.event.StockReservationFailedEvent;
 import com.scalableshop.events.event.StockReservedEvent;
@@ -9,7 +10,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import reactor.core.publisher.Mono;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,44 +27,59 @@ public class InventoryService {
   private final InventoryItemRepository inventoryItemRepository;
   private final StreamBridge streamBridge;
   private final StockReservationHelper stockReservationHelper;
+  private final HotStockLedger hotStockLedger;
+  private final TransactionTemplate transactionTemplate;
+  private final StockReservationReleaser stockReservationReleaser;
+  private final InventorySnapshotCache inventorySnapshotCache;
+  private final StockAdjustmentCoalescer stockAdjustmentCoalescer;
 
   @Autowired
   public InventoryService(
       InventoryItemRepository inventoryItemRepository,
       StreamBridge streamBridge,
-      StockReservationHelper stockReservationHelper) {
+      StockReservationHelper stockReservationHelper,
+      HotStockLedger hotStockLedger,
+      TransactionTemplate transactionTemplate,
+      StockReservationReleaser stockReservationReleaser,
+      InventorySnapshotCache inventorySnapshotCache,
+      StockAdjustmentCoalescer stockAdjustmentCoalescer) {
     this.inventoryItemRepository = inventoryItemRepository;
     this.streamBridge = streamBridge;
     this.stockReservationHelper = stockReservationHelper;
+    this.hotStockLedger = hotStockLedger;
+    this.transactionTemplate = transactionTemplate;
+    this.stockReservationReleaser = stockReservationReleaser;
+    this.inventorySnapshotCache = inventorySnapshotCache;
+    this.stockAdjustmentCoalescer = stockAdjustmentCoalescer;
   }
 
   // Method to initialize some stock (for testing purposes)
-  @Transactional
+  // Upsert on the unique product_id: concurrent calls for a new product cannot create duplicates
   public Mono<InventoryItem> initializeStock(Long productId, Integer initialQuantity) {
     return Mono.fromCallable(
         () -> {
           log.info(
               "Initializing stock for productId: {} with quantity: {}", productId, initialQuantity);
-          return inventoryItemRepository
-              .findByProductId(productId)
-              .map(
-                  item -> {
-                    item.setQuantityAvailable(initialQuantity);
-                    item.setQuantityReserved(0);
-                    log.info("Updating existing stock for productId {}: {}", productId, item);
-                    return inventoryItemRepository.save(item);
-                  })
-              .orElseGet(
-                  () -> {
-                    InventoryItem newItem = new InventoryItem(productId, initialQuantity, 0);
-                    log.info("Creating new stock for productId {}: {}", productId, newItem);
-                    return inventoryItemRepository.save(newItem);
-                  });
+          return transactionTemplate.execute(
+              status -> {
+                hotStockLedger.evictAfterCommit(productId);
+                if (inventoryItemRepository.insertIfAbsent(productId, initialQuantity) == 1) {
+                  log.info("Created new stock for productId {}", productId);
+                } else {
+                  inventoryItemRepository.setStock(productId, initialQuantity);
+                  log.info("Updated existing stock for productId {}", productId);
+                }
+                InventoryItem item =
+                    inventoryItemRepository.findByProductId(productId).orElseThrow();
+                inventorySnapshotCache.putAfterCommit(item);
+                return item;
+              });
         });
   }
 
   // Method to update stock locally
-  @Transactional
+  // One guarded UPDATE instead of read-modify-write, so a concurrent hot-ledger flush or
+  // reservation committed in between is not overwritten
   public Mono<InventoryItem> updateStock(Long productId, Integer quantityChange) {
     return Mono.fromCallable(
         () -> {
@@ -71,35 +87,48 @@ public class InventoryService {
               "Attempting to update stock for productId: {} by quantity: {}",
               productId,
               quantityChange);
-          return inventoryItemRepository
-              .findByProductId(productId)
-              .map(
-                  item -> {
-                    int newQuantity = item.getQuantityAvailable() + quantityChange;
-                    if (newQuantity < 0) {
-                      throw new RuntimeException(
-                          "Insufficient stock for product " + productId); // Or a custom exception
-                    }
-                    item.setQuantityAvailable(newQuantity);
-                    log.info(
-                        "Updated stock for productId {}: New quantity: {}", productId, newQuantity);
-                    return inventoryItemRepository.save(item);
-                  })
-              .orElseThrow(
-                  () ->
-                      new RuntimeException(
-                          "Inventory item not found for product ID: "
-                              + productId)); // Or a custom exception
+          return transactionTemplate.execute(
+              status -> {
+                if (inventoryItemRepository.adjustAvailable(productId, quantityChange) == 0) {
+                  if (inventoryItemRepository.findByProductId(productId).isEmpty()) {
+                    throw new RuntimeException(
+                        "Inventory item not found for product ID: "
+                            + productId); // Or a custom exception
+                  }
+                  throw new RuntimeException(
+                      "Insufficient stock for product " + productId); // Or a custom exception
+                }
+                hotStockLedger.evictAfterCommit(productId);
+                InventoryItem item =
+                    inventoryItemRepository.findByProductId(productId).orElseThrow();
+                log.info(
+                    "Updated stock for productId {}: New quantity: {}",
+                    productId,
+                    item.getQuantityAvailable());
+                inventorySnapshotCache.putAfterCommit(item);
+                return item;
+              });
         });
   }
 
-  // Method to get stock locally
+  // Applies stock deltas. Concurrent deltas for the same product are merged into one atomic update;
+  // the results come back in request order once committed.
+  public Mono<List<StockAdjustmentCoalescer.AdjustmentResult>> applyAdjustments(
+      List<StockAdjustmentCoalescer.Adjustment> adjustments) {
+    return Mono.defer(
+        () -> {
+          log.info("Applying {} stock adjustment(s)", adjustments.size());
+          return Mono.fromFuture(stockAdjustmentCoalescer.submit(adjustments));
+        });
+  }
+
+  // Method to get stock locally, served from the snapshot cache
   public Mono<InventoryItem> getInventoryByProductId(Long productId) {
     return Mono.fromCallable(
         () -> {
           log.info("Fetching stock for productId: {}", productId);
-          return inventoryItemRepository
-              .findByProductId(productId)
+          return inventorySnapshotCache
+              .get(productId, inventoryItemRepository::findByProductId)
               .orElseThrow(
                   () ->
                       new RuntimeException(
@@ -107,23 +136,105 @@ public class InventoryService {
         });
   }
 
+  // Stock of several products, served from the snapshot cache. Products without inventory are left
+  // out; misses are loaded with one query.
+  public Mono<List<InventoryItem>> getInventoryByProductIds(List<Long> productIds) {
+    return Mono.fromCallable(
+        () -> {
+          log.debug("Fetching stock for {} product(s)", productIds.size());
+          return inventorySnapshotCache.getAll(
+              productIds, inventoryItemRepository::findAllByProductIdIn);
+        });
+  }
+
+  public InventorySnapshotCache.Stats getInventoryCacheStats() {
+    return inventorySnapshotCache.getStats();
+  }
+
+  /**
+   * Reserves each batch in one transaction. If the batch fails, its orders are reserved one by one
+   * in their own transactions, so a bad order or a transient database error costs only the orders
+   * it hits. Those are rethrown, so the binder redelivers the batch; orders reserved in the
+   * meantime are skipped as already processed.
+   */
+  @Bean
+  public Consumer<List<OrderCreatedEvent>> orderCreatedEventConsumer() {
+    return events -> {
+      log.info("Received batch of {} OrderCreatedEvent(s).", events.size());
+      int reserved;
+      try {
+        reserved = stockReservationHelper.reserveStockBatch(events);
+      } catch (RuntimeException error) {
+        log.warn(
+            "Stock reservation failed for batch of {} OrderCreatedEvent(s), reserving order by order: {}",
+            events.size(),
+            error.getMessage());
+        reserved = reserveOneByOne(events);
+      }
+      log.info(
+          "InventoryService Consumer: OrderCreatedEvent batch processed. {} order(s) reserved.",
+          reserved);
+    };
+  }
+
+  /** Releases stock of cancelled orders, falling back to one order at a time like reservations. */
   @Bean
-  public Consumer<OrderCreatedEvent> orderCreatedEventConsumer() {
-    return event -> {
+  public Consumer<List<OrderCancelledEvent>> orderCancelledEventConsumer() {
+    return events -> {
+      log.info("Received batch of {} OrderCancelledEvent(s).", events.size());
+      List<Long> orderIds =
+          events.stream().map(OrderCancelledEvent::getOrderId).distinct().toList();
+      int released;
+      try {
+        released = stockReservationReleaser.releaseCancelled(orderIds);
+      } catch (RuntimeException error) {
+        log.warn(
+            "Releasing stock failed for batch of {} OrderCancelledEvent(s), releasing order by order: {}",
+            events.size(),
+            error.getMessage());
+        released = releaseOneByOne(orderIds);
+      }
       log.info(
-          "Received OrderCreatedEvent for Order ID: {} by Customer ID: {}",
-          event.getOrderId(),
-          event.getCustomerId());
+          "InventoryService Consumer: OrderCancelledEvent batch processed. Stock of {} order(s) released.",
+          released);
+    };
+  }
+
+  private int reserveOneByOne(List<OrderCreatedEvent> events) {
+    int reserved = 0;
+    RuntimeException failure = null;
+    for (OrderCreatedEvent event : events) {
       try {
-        stockReservationHelper.reserveStock(
-            event.getOrderId(), event.getCustomerId(), event.getOrderItems());
+        reserved += stockReservationHelper.reserveStockBatch(List.of(event));
       } catch (RuntimeException error) {
         log.error(
             "Error during stock reservation for Order ID: {}: {}",
             event.getOrderId(),
             error.getMessage(),
             error);
+        failure = error;
       }
-    };
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    return reserved;
+  }
+
+  private int releaseOneByOne(List<Long> orderIds) {
+    int released = 0;
+    RuntimeException failure = null;
+    for (Long orderId : orderIds) {
+      try {
+        released += stockReservationReleaser.releaseCancelled(List.of(orderId));
+      } catch (RuntimeException error) {
+        log.error("Error releasing stock for Order ID: {}: {}", orderId, error.getMessage(), error);
+        failure = error;
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    return released;
   }
 }
@@ -0,0 +1,199 @@
+package com.scalableshop.productinventoryservice.service;
+
+import com.scalableshop.productinventoryservice.model.InventoryItem;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded in-process LRU cache of {@link InventoryItem} snapshots keyed by product ID, read
+ * through on misses.
+ *
+ * <p>Writers that know the new row state put it into the cache once their transaction commits;
+ * writers applying a bulk UPDATE evict the product instead. Commits of one row are ordered by its
+ * row lock, but their after-commit callbacks are not, so each change is stamped from a global
+ * sequence while the row lock is still held and a put older than what the cache holds is dropped.
+ * A loaded snapshot is only stored if no change to its stripe was applied while it was read. A
+ * snapshot may briefly lag the table between a commit and its callback.
+ */
+@Component
+public class InventorySnapshotCache {
+
+  private static final int STRIPES = 64;
+
+  private final int capacity;
+  private final Map<Long, Entry> items;
+  private final AtomicLong sequence = new AtomicLong();
+  // Bumped by every applied change; guards read-through loads
+  private final long[] generations = new long[STRIPES];
+  // Highest stamp of an eviction; older puts would bring back an evicted state
+  private final long[] evictedUpTo = new long[STRIPES];
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public InventorySnapshotCache(@Value("${inventory.cache.capacity:50000}") int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    this.capacity = capacity;
+    this.items =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > InventorySnapshotCache.this.capacity;
+          }
+        };
+  }
+
+  /** Returns the cached snapshot, or loads and caches it unless the product changed meanwhile. */
+  public Optional<InventoryItem> get(
+      Long productId, Function<Long, Optional<InventoryItem>> loader) {
+    return getAll(List.of(productId), missing -> loader.apply(productId).stream().toList())
+        .stream()
+        .findFirst();
+  }
+
+  /**
+   * Returns the snapshots of the products that have inventory, in request order. Misses are
+   * loaded together with one call of the loader.
+   */
+  public List<InventoryItem> getAll(
+      Collection<Long> productIds, Function<Collection<Long>, List<InventoryItem>> loader) {
+    Map<Long, InventoryItem> snapshots = new LinkedHashMap<>();
+    List<Long> missing = new ArrayList<>();
+    long[] generationsBeforeLoad;
+    synchronized (this) {
+      for (Long productId : productIds) {
+        Entry entry = items.get(productId);
+        if (entry != null) {
+          snapshots.put(productId, entry.snapshot);
+        } else {
+          missing.add(productId);
+        }
+      }
+      generationsBeforeLoad = generations.clone();
+    }
+    hits.add(productIds.size() - missing.size());
+
+    if (!missing.isEmpty()) {
+      misses.add(missing.size());
+      List<InventoryItem> loaded = loader.apply(missing);
+      synchronized (this) {
+        for (InventoryItem item : loaded) {
+          InventoryItem snapshot = copyOf(item);
+          snapshots.put(item.getProductId(), snapshot);
+          int stripe = stripe(item.getProductId());
+          if (generations[stripe] == generationsBeforeLoad[stripe]) {
+            // Stamped 0 so that any committed change put afterwards replaces it
+            items.putIfAbsent(item.getProductId(), new Entry(snapshot, 0));
+          }
+        }
+      }
+    }
+
+    List<InventoryItem> result = new ArrayList<>(snapshots.size());
+    for (Long productId : productIds) {
+      InventoryItem snapshot = snapshots.get(productId);
+      if (snapshot != null) {
+        result.add(copyOf(snapshot));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Puts the current state of the row into the cache once the current transaction commits, or
+   * right away outside a transaction. Call it while the row is still locked by the change.
+   */
+  public void putAfterCommit(InventoryItem item) {
+    InventoryItem snapshot = copyOf(item);
+    long stamp = sequence.incrementAndGet();
+    afterCommit(() -> put(snapshot, stamp));
+  }
+
+  /**
+   * Evicts the products once the current transaction commits, or right away outside a
+   * transaction. Used after bulk updates whose resulting rows are not read back.
+   */
+  public void evictAfterCommit(Collection<Long> productIds) {
+    long stamp = sequence.incrementAndGet();
+    afterCommit(() -> evict(productIds, stamp));
+  }
+
+  public Stats getStats() {
+    synchronized (this) {
+      return new Stats(hits.sum(), misses.sum(), items.size(), capacity);
+    }
+  }
+
+  private synchronized void put(InventoryItem snapshot, long stamp) {
+    int stripe = stripe(snapshot.getProductId());
+    generations[stripe]++;
+    Entry current = items.get(snapshot.getProductId());
+    if (stamp <= evictedUpTo[stripe] || (current != null && current.stamp >= stamp)) {
+      return;
+    }
+    items.put(snapshot.getProductId(), new Entry(snapshot, stamp));
+  }
+
+  private synchronized void evict(Collection<Long> productIds, long stamp) {
+    for (Long productId : productIds) {
+      int stripe = stripe(productId);
+      generations[stripe]++;
+      evictedUpTo[stripe] = Math.max(evictedUpTo[stripe], stamp);
+      items.remove(productId);
+    }
+  }
+
+  private static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            action.run();
+          }
+        });
+  }
+
+  private static InventoryItem copyOf(InventoryItem item) {
+    return new InventoryItem(
+        item.getId(), item.getProductId(), item.getQuantityAvailable(), item.getQuantityReserved());
+  }
+
+  private static int stripe(Long productId) {
+    return (Long.hashCode(productId) & Integer.MAX_VALUE) % STRIPES;
+  }
+
+  private static final class Entry {
+    private final InventoryItem snapshot;
+    private final long stamp;
+
+    private Entry(InventoryItem snapshot, long stamp) {
+      this.snapshot = snapshot;
+      this.stamp = stamp;
+    }
+  }
+
+  @lombok.Value
+  public static class Stats {
+    long hits;
+    long misses;
+    int size;
+    int capacity;
+  }
+}
@@ -0,0 +1,92 @@
+package com.scalableshop.productinventoryservice.service;
+
+import com.scalableshop.idempotency.IdempotencyFilter;
+import com.scalableshop.productinventoryservice.repository.ProcessedOrderEventRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Idempotency for order events: a recent-ID cache answers most redeliveries from memory, and
+ * INSERT ... ON CONFLICT DO NOTHING into processed_order_events is the authoritative check.
+ */
+@Component
+public class OrderEventIdempotency {
+
+  private final ProcessedOrderEventRepository processedOrderEventRepository;
+  private final IdempotencyFilter<Long> idempotencyFilter;
+
+  public OrderEventIdempotency(
+      ProcessedOrderEventRepository processedOrderEventRepository,
+      @Value("${idempotency.recent-ids.capacity:100000}") int capacity) {
+    this.processedOrderEventRepository = processedOrderEventRepository;
+    this.idempotencyFilter = new IdempotencyFilter<>(capacity);
+  }
+
+  /**
+   * Returns which of the orders were already processed, without recording anything. Orders known
+   * from memory are answered without a query; the rest are checked with one query.
+   */
+  public Set<Long> findProcessed(Collection<Long> orderIds) {
+    Set<Long> processed = new HashSet<>();
+    List<Long> unknown = new ArrayList<>();
+    for (Long orderId : orderIds) {
+      if (idempotencyFilter.isKnownDuplicate(orderId)) {
+        processed.add(orderId);
+      } else {
+        unknown.add(orderId);
+      }
+    }
+    if (!unknown.isEmpty()) {
+      processed.addAll(processedOrderEventRepository.findProcessedOrderIds(unknown));
+    }
+    return processed;
+  }
+
+  /**
+   * Records the order as processed in the current transaction. If that transaction rolls back,
+   * the order is neither recorded nor cached, so a redelivery is processed again.
+   *
+   * @return true if the order is new, false if it was processed before
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public boolean recordIfNew(Long orderId) {
+    if (idempotencyFilter.isKnownDuplicate(orderId)) {
+      return false;
+    }
+
+    boolean recorded =
+        processedOrderEventRepository.insertIfAbsent(orderId, LocalDateTime.now()) == 1;
+    if (recorded) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              idempotencyFilter.markProcessed(orderId);
+            }
+          });
+    } else {
+      idempotencyFilter.markProcessed(orderId);
+    }
+    return recorded;
+  }
+
+  /** Forgets the recently processed orders kept in memory, e.g. after the table was emptied. */
+  public void clearRecent() {
+    idempotencyFilter.clear();
+  }
+
+  public long getShortCircuitCount() {
+    return idempotencyFilter.getShortCircuitCount();
+  }
+}
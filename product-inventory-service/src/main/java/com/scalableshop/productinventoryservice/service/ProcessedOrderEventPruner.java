@@ -0,0 +1,54 @@
+package com.scalableshop.productinventoryservice.service;
+
+import com.scalableshop.idempotency.BatchPruner;
+import com.scalableshop.productinventoryservice.repository.ProcessedOrderEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * Deletes processed order events older than the retention period. An OrderCreatedEvent
+ * redelivered after its row is pruned would be reserved again, so the retention period must stay
+ * longer than the broker's redelivery window.
+ */
+@Component
+public class ProcessedOrderEventPruner {
+
+  private static final Logger log = LoggerFactory.getLogger(ProcessedOrderEventPruner.class);
+
+  private final ProcessedOrderEventRepository processedOrderEventRepository;
+  private final BatchPruner batchPruner;
+  private final int retentionHours;
+
+  public ProcessedOrderEventPruner(
+      ProcessedOrderEventRepository processedOrderEventRepository,
+      TransactionTemplate transactionTemplate,
+      @Value("${idempotency.processed-events.retention-hours:168}") int retentionHours,
+      @Value("${idempotency.pruner.batch-size:1000}") int batchSize) {
+    this.processedOrderEventRepository = processedOrderEventRepository;
+    this.batchPruner =
+        new BatchPruner(batchSize, work -> transactionTemplate.execute(status -> work.getAsInt()));
+    this.retentionHours = retentionHours;
+  }
+
+  @Scheduled(fixedDelayString = "${idempotency.pruner.interval-ms:3600000}")
+  public void pruneProcessedEvents() {
+    LocalDateTime cutoff = LocalDateTime.now().minusHours(retentionHours);
+    int pruned =
+        batchPruner.prune(
+            limit ->
+                processedOrderEventRepository.findIdsProcessedBefore(
+                    cutoff, PageRequest.of(0, limit)),
+            processedOrderEventRepository::deleteAllByIdInBatch);
+
+    if (pruned > 0) {
+      log.info("Pruned {} processed order events older than {}.", pruned, cutoff);
+    }
+  }
+}
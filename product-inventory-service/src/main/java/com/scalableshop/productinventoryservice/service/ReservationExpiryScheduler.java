@@ -0,0 +1,127 @@
+package com.scalableshop.productinventoryservice.service;
+
+import com.scalableshop.productinventoryservice.repository.StockReservationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Releases reservations once they expire, when {@code inventory.reservations.ttl-seconds} is set.
+ * Each committed reservation is put on a {@link TimerWheel}, which is advanced every tick; the
+ * orders falling due are released in batches. Expiries the wheel does not know about, such as
+ * those of reservations made before a restart or by another instance, are picked up by a periodic
+ * sweep of stock_reservations.
+ */
+@Component
+public class ReservationExpiryScheduler {
+
+  private static final Logger log = LoggerFactory.getLogger(ReservationExpiryScheduler.class);
+
+  private final StockReservationReleaser stockReservationReleaser;
+  private final StockReservationRepository stockReservationRepository;
+  private final Duration ttl;
+  private final int batchSize;
+  private final TimerWheel<Long> wheel;
+
+  public ReservationExpiryScheduler(
+      StockReservationReleaser stockReservationReleaser,
+      StockReservationRepository stockReservationRepository,
+      @Value("${inventory.reservations.ttl-seconds:0}") long ttlSeconds,
+      @Value("${inventory.reservations.expiry.tick-ms:1000}") long tickMillis,
+      @Value("${inventory.reservations.expiry.wheel-slots:512}") int wheelSlots,
+      @Value("${inventory.reservations.expiry.batch-size:500}") int batchSize) {
+    this.stockReservationReleaser = stockReservationReleaser;
+    this.stockReservationRepository = stockReservationRepository;
+    this.ttl = Duration.ofSeconds(ttlSeconds);
+    this.batchSize = batchSize;
+    this.wheel = new TimerWheel<>(wheelSlots, tickMillis, System.currentTimeMillis());
+  }
+
+  public boolean isEnabled() {
+    return !ttl.isZero();
+  }
+
+  /**
+   * Returns when a reservation made now for the order expires, and puts the order on the wheel
+   * once the current transaction commits.
+   *
+   * @return the expiry time, or null if reservations do not expire
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public LocalDateTime track(Long orderId) {
+    if (!isEnabled()) {
+      return null;
+    }
+    LocalDateTime expiresAt = LocalDateTime.now().plus(ttl);
+    long deadlineMillis = expiresAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            wheel.schedule(orderId, deadlineMillis);
+          }
+        });
+    return expiresAt;
+  }
+
+  @Scheduled(fixedDelayString = "${inventory.reservations.expiry.tick-ms:1000}")
+  public void tick() {
+    if (!isEnabled()) {
+      return;
+    }
+    List<Long> due = wheel.advance(System.currentTimeMillis());
+    int released = 0;
+    for (int from = 0; from < due.size(); from += batchSize) {
+      List<Long> batch = due.subList(from, Math.min(from + batchSize, due.size()));
+      try {
+        released += stockReservationReleaser.releaseExpired(batch);
+      } catch (RuntimeException e) {
+        // The rows are still there, so the sweep releases them later
+        log.error(
+            "ReservationExpiryScheduler: Failed to release {} expired order(s). The sweep will retry.",
+            batch.size(),
+            e);
+      }
+    }
+    if (released > 0) {
+      log.info("ReservationExpiryScheduler: Released {} expired reservation(s).", released);
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${inventory.reservations.expiry.sweep-interval-ms:60000}")
+  public void sweep() {
+    if (!isEnabled()) {
+      return;
+    }
+    LocalDateTime now = LocalDateTime.now();
+    int released = 0;
+    List<Long> expired;
+    do {
+      expired =
+          stockReservationRepository.findExpiredOrderIds(now, PageRequest.of(0, batchSize));
+      if (!expired.isEmpty()) {
+        released += stockReservationReleaser.releaseExpired(expired);
+      }
+    } while (expired.size() == batchSize);
+
+    if (released > 0) {
+      log.info("ReservationExpiryScheduler: Sweep released {} expired reservation(s).", released);
+    }
+  }
+
+  int getScheduledCount() {
+    return wheel.size();
+  }
+}
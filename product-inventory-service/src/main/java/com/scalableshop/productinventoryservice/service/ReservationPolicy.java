@@ -0,0 +1,14 @@
+package com.scalableshop.productinventoryservice.service;
+
+/**
+ * How an order is reserved when some of its items are not in stock, configured with {@code
+ * inventory.reservations.policy}.
+ */
+public enum ReservationPolicy {
+  // The order is reserved only if every item is in stock in full
+  ALL_OR_NOTHING,
+  // What is in stock is reserved and the rest dropped; the order fails only if nothing is in stock
+  PARTIAL,
+  // What is in stock is reserved and the rest backordered; the order fails only on unknown products
+  BACKORDER
+}
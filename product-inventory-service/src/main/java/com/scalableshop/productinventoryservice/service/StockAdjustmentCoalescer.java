@@ -0,0 +1,222 @@
+package com.scalableshop.productinventoryservice.service;
+
+import com.scalableshop.productinventoryservice.repository.InventoryItemRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges stock adjustments submitted concurrently for the same product. Adjustments are collected
+ * for a short window and then applied in one transaction, with a single atomic UPDATE per product
+ * adding the sum of its deltas, in product ID order like reservations take their row locks.
+ *
+ * <p>The stock never goes negative. If the merged delta of a product would make it negative, its
+ * adjustments are applied one by one in arrival order instead, so only those that do not fit are
+ * rejected. If the window fails as a whole, each product is retried in its own transaction, so
+ * only the adjustments of a failing product fail. Adjustments still queued at shutdown are applied
+ * before the coalescer stops.
+ */
+@Component
+public class StockAdjustmentCoalescer {
+
+  private static final Logger log = LoggerFactory.getLogger(StockAdjustmentCoalescer.class);
+
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+  public enum Outcome {
+    APPLIED,
+    INSUFFICIENT_STOCK,
+    PRODUCT_NOT_FOUND
+  }
+
+  private final InventoryItemRepository inventoryItemRepository;
+  private final InventorySnapshotCache inventorySnapshotCache;
+  private final HotStockLedger hotStockLedger;
+  private final TransactionTemplate transactionTemplate;
+  private final ScheduledExecutorService flusher;
+  // Pending adjustments by product, swapped out as a whole by each flush
+  private Map<Long, List<Pending>> pending = new TreeMap<>();
+  private boolean closed;
+
+  public StockAdjustmentCoalescer(
+      InventoryItemRepository inventoryItemRepository,
+      InventorySnapshotCache inventorySnapshotCache,
+      HotStockLedger hotStockLedger,
+      TransactionTemplate transactionTemplate,
+      @Value("${inventory.adjustments.window-ms:5}") long windowMillis) {
+    this.inventoryItemRepository = inventoryItemRepository;
+    this.inventorySnapshotCache = inventorySnapshotCache;
+    this.hotStockLedger = hotStockLedger;
+    this.transactionTemplate = transactionTemplate;
+    this.flusher =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "stock-adjustment-coalescer");
+              thread.setDaemon(true);
+              return thread;
+            });
+    flusher.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /** Queues the adjustments; the future completes with their outcomes once they are committed. */
+  public CompletableFuture<List<AdjustmentResult>> submit(List<Adjustment> adjustments) {
+    List<CompletableFuture<AdjustmentResult>> results = new ArrayList<>(adjustments.size());
+    synchronized (this) {
+      if (closed) {
+        return CompletableFuture.failedFuture(
+            new IllegalStateException("Stock adjustments are shutting down"));
+      }
+      for (Adjustment adjustment : adjustments) {
+        Pending entry = new Pending(adjustment);
+        pending.computeIfAbsent(adjustment.getProductId(), id -> new ArrayList<>()).add(entry);
+        results.add(entry.result);
+      }
+    }
+    return CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+        .thenApply(done -> results.stream().map(CompletableFuture::join).toList());
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    synchronized (this) {
+      closed = true;
+    }
+    flusher.shutdown();
+    try {
+      if (!flusher.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        log.warn("StockAdjustmentCoalescer: Flush still running at shutdown.");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // Apply what is still queued, so no caller is left waiting on its future
+    flush();
+  }
+
+  void flush() {
+    Map<Long, List<Pending>> batch;
+    synchronized (this) {
+      if (pending.isEmpty()) {
+        return;
+      }
+      batch = pending;
+      pending = new TreeMap<>();
+    }
+    try {
+      applyAndComplete(batch);
+    } catch (RuntimeException e) {
+      log.warn(
+          "StockAdjustmentCoalescer: Failed to apply adjustments for {} product(s), retrying each"
+              + " product on its own.",
+          batch.size(),
+          e);
+      batch.forEach(
+          (productId, entries) -> {
+            try {
+              applyAndComplete(Map.of(productId, entries));
+            } catch (RuntimeException productError) {
+              log.error(
+                  "StockAdjustmentCoalescer: Failed to apply {} adjustment(s) for productId {}.",
+                  entries.size(),
+                  productId,
+                  productError);
+              entries.forEach(entry -> entry.fail(productError));
+            }
+          });
+    }
+  }
+
+  private void applyAndComplete(Map<Long, List<Pending>> batch) {
+    Map<Pending, Outcome> outcomes = transactionTemplate.execute(status -> apply(batch));
+    outcomes.forEach((entry, outcome) -> entry.complete(outcome));
+  }
+
+  private Map<Pending, Outcome> apply(Map<Long, List<Pending>> batch) {
+    Map<Pending, Outcome> outcomes = new HashMap<>();
+    int statements = 0;
+    int adjustments = 0;
+    for (Map.Entry<Long, List<Pending>> product : batch.entrySet()) {
+      Long productId = product.getKey();
+      List<Pending> entries = product.getValue();
+      adjustments += entries.size();
+      // Summed as long: the deltas of concurrent requests can add up past the int range, and a
+      // merged delta outside it cannot fit the stock anyway
+      long mergedDelta = entries.stream().mapToLong(entry -> entry.adjustment.getDelta()).sum();
+      statements++;
+      if (mergedDelta == (int) mergedDelta
+          && inventoryItemRepository.adjustAvailable(productId, (int) mergedDelta) == 1) {
+        entries.forEach(entry -> outcomes.put(entry, Outcome.APPLIED));
+      } else {
+        // The merged delta does not fit: find out which adjustments do, in arrival order
+        for (Pending entry : entries) {
+          statements++;
+          outcomes.put(
+              entry,
+              inventoryItemRepository.adjustAvailable(productId, entry.adjustment.getDelta()) == 1
+                  ? Outcome.APPLIED
+                  : Outcome.INSUFFICIENT_STOCK);
+        }
+        if (inventoryItemRepository.findByProductId(productId).isEmpty()) {
+          entries.forEach(entry -> outcomes.put(entry, Outcome.PRODUCT_NOT_FOUND));
+        }
+      }
+      hotStockLedger.evictAfterCommit(productId);
+    }
+    inventorySnapshotCache.evictAfterCommit(List.copyOf(batch.keySet()));
+    log.debug(
+        "StockAdjustmentCoalescer: Applied {} adjustment(s) with {} update(s).",
+        adjustments,
+        statements);
+    return outcomes;
+  }
+
+  /** A stock change requested by a client: a positive delta restocks, a negative one removes. */
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class Adjustment {
+    private Long productId;
+    private Integer delta;
+  }
+
+  @lombok.Value
+  public static class AdjustmentResult {
+    Long productId;
+    int delta;
+    Outcome outcome;
+  }
+
+  private static final class Pending {
+    private final Adjustment adjustment;
+    private final CompletableFuture<AdjustmentResult> result = new CompletableFuture<>();
+
+    private Pending(Adjustment adjustment) {
+      this.adjustment = adjustment;
+    }
+
+    private void fail(Throwable error) {
+      result.completeExceptionally(error);
+    }
+
+    private void complete(Outcome outcome) {
+      result.complete(
+          new AdjustmentResult(adjustment.getProductId(), adjustment.getDelta(), outcome));
+    }
+  }
+}
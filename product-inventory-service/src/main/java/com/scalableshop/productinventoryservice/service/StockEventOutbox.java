@@ -0,0 +1,47 @@
+package com.scalableshop.productinventoryservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scalableshop.productinventoryservice.model.OutboxMessage;
+import com.scalableshop.productinventoryservice.repository.OutboxMessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Writes stock events to the outbox in the caller's transaction, so an event exists exactly when
+ * the reservation it describes has committed. {@link StockEventRelayer} publishes them.
+ */
+@Service
+public class StockEventOutbox {
+
+  private static final Logger log = LoggerFactory.getLogger(StockEventOutbox.class);
+
+  private final OutboxMessageRepository outboxMessageRepository;
+  private final ObjectMapper objectMapper;
+
+  public StockEventOutbox(
+      OutboxMessageRepository outboxMessageRepository, ObjectMapper objectMapper) {
+    this.outboxMessageRepository = outboxMessageRepository;
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * Adds an outbox row for the event, keyed by order ID. Rows are inserted at flush time, in JDBC
+   * batches when a transaction adds several.
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void add(Long orderId, Object event) {
+    String eventType = event.getClass().getSimpleName();
+    try {
+      outboxMessageRepository.save(
+          new OutboxMessage(orderId.toString(), eventType, objectMapper.writeValueAsString(event)));
+      log.debug("{} added to outbox for Order ID: {}", eventType, orderId);
+    } catch (JsonProcessingException e) {
+      log.error("Failed to serialize {} for Order ID: {}", eventType, orderId, e);
+      throw new RuntimeException("Failed to serialize " + eventType, e);
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package com.scalableshop.productinventoryservice.service;
+
+import com.scalableshop.productinventoryservice.model.OutboxMessage;
+import com.scalableshop.productinventoryservice.repository.OutboxMessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Publishes the stock events in the outbox in batches, each claimed and deleted in its own
+ * transaction. A message that cannot be sent stays in the outbox and is retried with exponential
+ * back-off; later messages of the same order are held back so they are never published ahead of
+ * it. A message whose event type has no binding, or that has failed max-attempts times, is parked
+ * in the outbox for an operator and holds back the rest of its order.
+ */
+@Component
+public class StockEventRelayer {
+
+  private static final Logger log = LoggerFactory.getLogger(StockEventRelayer.class);
+
+  public static final String EVENT_TYPE_HEADER = "eventType";
+  public static final String AGGREGATE_ID_HEADER = "aggregateId";
+
+  private static final String UNROUTABLE = "No output binding for event type";
+
+  // Output binding for each event type written to the outbox.
+  // The bindings are configured in application.properties.
+  private static final Map<String, String> BINDINGS_BY_EVENT_TYPE =
+      Map.of(
+          "StockReservedEvent", "stockReservedEventProducer-out-0",
+          "StockReservationFailedEvent", "stockReservationFailedEventProducer-out-0");
+
+  private final OutboxMessageRepository outboxMessageRepository;
+  private final StreamBridge streamBridge;
+  private final TransactionTemplate transactionTemplate;
+  private final boolean enabled;
+  private final int batchSize;
+  private final long retryBackoffMillis;
+  private final long maxRetryBackoffMillis;
+  private final int maxAttempts;
+
+  public StockEventRelayer(
+      OutboxMessageRepository outboxMessageRepository,
+      StreamBridge streamBridge,
+      TransactionTemplate transactionTemplate,
+      @Value("${inventory.outbox.relay.enabled:true}") boolean enabled,
+      @Value("${inventory.outbox.relay.batch-size:100}") int batchSize,
+      @Value("${inventory.outbox.relay.retry-backoff-ms:1000}") long retryBackoffMillis,
+      @Value("${inventory.outbox.relay.max-retry-backoff-ms:300000}") long maxRetryBackoffMillis,
+      @Value("${inventory.outbox.relay.max-attempts:10}") int maxAttempts) {
+    this.outboxMessageRepository = outboxMessageRepository;
+    this.streamBridge = streamBridge;
+    this.transactionTemplate = transactionTemplate;
+    this.enabled = enabled;
+    this.batchSize = batchSize;
+    this.retryBackoffMillis = retryBackoffMillis;
+    this.maxRetryBackoffMillis = maxRetryBackoffMillis;
+    this.maxAttempts = maxAttempts;
+  }
+
+  @Scheduled(fixedDelayString = "${inventory.outbox.relay.interval-ms:100}")
+  public void scheduledRelay() {
+    if (!enabled) {
+      return;
+    }
+    try {
+      relay();
+    } catch (RuntimeException e) {
+      log.error("StockEventRelayer: Relay run failed. Will retry on the next run.", e);
+    }
+  }
+
+  /**
+   * Relays due outbox messages until a batch comes back partly filled.
+   *
+   * @return the number of messages published
+   */
+  public int relay() {
+    int published = 0;
+    int claimed;
+    do {
+      int[] result = transactionTemplate.execute(status -> relayBatch());
+      claimed = result[0];
+      published += result[1];
+    } while (claimed == batchSize);
+
+    if (published > 0) {
+      log.info("StockEventRelayer: Published {} stock event(s).", published);
+    }
+    return published;
+  }
+
+  // Returns {claimed, published}
+  private int[] relayBatch() {
+    LocalDateTime now = LocalDateTime.now();
+    List<OutboxMessage> messages =
+        outboxMessageRepository.claimBatch(now, PageRequest.of(0, batchSize));
+    if (messages.isEmpty()) {
+      return new int[] {0, 0};
+    }
+
+    List<UUID> sentIds = new ArrayList<>(messages.size());
+    Set<String> blockedAggregates = new HashSet<>();
+    for (OutboxMessage message : messages) {
+      if (blockedAggregates.contains(message.getAggregateId())) {
+        continue;
+      }
+      String error = send(message);
+      if (error == null) {
+        sentIds.add(message.getId());
+      } else {
+        long backoff =
+            Math.min(
+                maxRetryBackoffMillis,
+                retryBackoffMillis << Math.min(message.getAttempts(), 30));
+        message.recordFailedAttempt(error, now.plus(Duration.ofMillis(backoff)));
+        blockedAggregates.add(message.getAggregateId());
+        if (UNROUTABLE.equals(error) || message.getAttempts() >= maxAttempts) {
+          message.park(now);
+          log.error(
+              "Parked outbox message with ID: {} for order {} after {} attempt(s): {}. Later events"
+                  + " of the order are held back until it is removed or its parked_at is cleared.",
+              message.getId(),
+              message.getAggregateId(),
+              message.getAttempts(),
+              error);
+        }
+      }
+    }
+
+    if (!sentIds.isEmpty()) {
+      // One DELETE ... WHERE id IN for the whole batch
+      outboxMessageRepository.deleteAllByIdInBatch(sentIds);
+    }
+    return new int[] {messages.size(), sentIds.size()};
+  }
+
+  // Returns null once the message is handed to the binder, or the reason it was not
+  private String send(OutboxMessage message) {
+    String bindingName = BINDINGS_BY_EVENT_TYPE.get(message.getEventType());
+    if (bindingName == null) {
+      log.error(
+          "No output binding registered for event type '{}' (outbox message ID: {}).",
+          message.getEventType(),
+          message.getId());
+      return UNROUTABLE;
+    }
+    try {
+      // The payload was serialized when the outbox row was written; publish the stored JSON as-is
+      if (streamBridge.send(bindingName, toMessage(message))) {
+        return null;
+      }
+      log.warn("Outbox message with ID: {} was not accepted. Will retry later.", message.getId());
+      return "Not accepted by binding " + bindingName;
+    } catch (Exception e) {
+      log.error(
+          "Failed to send outbox message with ID: {}. Will retry later.", message.getId(), e);
+      return "Send failed: " + e.getMessage();
+    }
+  }
+
+  private static Message<byte[]> toMessage(OutboxMessage message) {
+    return MessageBuilder.withPayload(message.getPayload().getBytes(StandardCharsets.UTF_8))
+        .setHeader(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON_VALUE)
+        .setHeader(EVENT_TYPE_HEADER, message.getEventType())
+        .setHeader(AGGREGATE_ID_HEADER, message.getAggregateId())
+        .build();
+  }
+}
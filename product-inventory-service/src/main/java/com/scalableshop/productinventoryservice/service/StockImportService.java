@@ -0,0 +1,248 @@
+package com.scalableshop.productinventoryservice.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Imports stock levels from a CSV ({@code productId,quantity}, with an optional header line) or
+ * NDJSON ({@code {"productId":1,"quantity":5}} per line) stream. The body is read line by line
+ * and written in chunks, each upserted by {@link StockImportWriter} in its own transaction, so
+ * memory use does not grow with the size of the import. Within a chunk the last line for a
+ * product wins. Invalid lines are counted and skipped. A failed chunk stops the import; the
+ * chunks before it stay committed, and re-running the import is safe.
+ *
+ * <p>The progress of running and recent imports is kept in memory for {@link #getImports()}.
+ */
+@Service
+public class StockImportService {
+
+  private static final Logger log = LoggerFactory.getLogger(StockImportService.class);
+
+  private static final int MAX_REPORTED_ERRORS = 100;
+  private static final int MAX_KEPT_IMPORTS = 20;
+
+  public enum Format {
+    CSV,
+    NDJSON
+  }
+
+  public enum Status {
+    RUNNING,
+    COMPLETED,
+    FAILED
+  }
+
+  private final StockImportWriter stockImportWriter;
+  private final InventorySnapshotCache inventorySnapshotCache;
+  private final HotStockLedger hotStockLedger;
+  private final TransactionTemplate transactionTemplate;
+  private final ObjectMapper objectMapper;
+  private final int chunkSize;
+  private final Map<UUID, ImportProgress> imports = new LinkedHashMap<>();
+
+  public StockImportService(
+      StockImportWriter stockImportWriter,
+      InventorySnapshotCache inventorySnapshotCache,
+      HotStockLedger hotStockLedger,
+      TransactionTemplate transactionTemplate,
+      ObjectMapper objectMapper,
+      @Value("${inventory.import.chunk-size:5000}") int chunkSize) {
+    this.stockImportWriter = stockImportWriter;
+    this.inventorySnapshotCache = inventorySnapshotCache;
+    this.hotStockLedger = hotStockLedger;
+    this.transactionTemplate = transactionTemplate;
+    this.objectMapper = objectMapper;
+    this.chunkSize = chunkSize;
+  }
+
+  /** Runs an import to the end of the stream and returns its final progress. */
+  public ImportProgress importStock(InputStream body, Format format) {
+    ImportProgress progress = register(format);
+    log.info("Stock import {} started ({}).", progress.getId(), format);
+    // Sorted, so each chunk locks its rows in product ID order
+    Map<Long, Integer> chunk = new TreeMap<>();
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+      String line;
+      long lineNumber = 0;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.isBlank() || (format == Format.CSV && lineNumber == 1 && isCsvHeader(line))) {
+          continue;
+        }
+        progress.linesRead++;
+        try {
+          long[] row = format == Format.CSV ? parseCsv(line) : parseNdjson(line);
+          chunk.put(row[0], (int) row[1]);
+        } catch (IllegalArgumentException e) {
+          progress.reject(lineNumber, e.getMessage());
+          continue;
+        }
+        if (chunk.size() == chunkSize) {
+          writeChunk(chunk, progress);
+        }
+      }
+      writeChunk(chunk, progress);
+      progress.finish(Status.COMPLETED, null);
+      log.info(
+          "Stock import {} completed: {} products written, {} lines rejected.",
+          progress.getId(),
+          progress.getProductsWritten(),
+          progress.getLinesRejected());
+    } catch (IOException | RuntimeException e) {
+      progress.finish(Status.FAILED, e.getMessage());
+      log.error(
+          "Stock import {} failed after {} products written: {}",
+          progress.getId(),
+          progress.getProductsWritten(),
+          e.getMessage(),
+          e);
+    }
+    return progress;
+  }
+
+  /** Running and recent imports, oldest first. */
+  public synchronized List<ImportProgress> getImports() {
+    return new ArrayList<>(imports.values());
+  }
+
+  private void writeChunk(Map<Long, Integer> chunk, ImportProgress progress) {
+    if (chunk.isEmpty()) {
+      return;
+    }
+    List<Long> productIds = List.copyOf(chunk.keySet());
+    Integer written =
+        transactionTemplate.execute(
+            status -> {
+              int count = stockImportWriter.write(chunk);
+              // The rows were changed behind the cache and the hot-product counters
+              inventorySnapshotCache.evictAfterCommit(productIds);
+              productIds.forEach(hotStockLedger::evictAfterCommit);
+              return count;
+            });
+    progress.productsWritten += written;
+    progress.chunksCommitted++;
+    chunk.clear();
+    log.debug(
+        "Stock import {}: {} lines read, {} products written.",
+        progress.getId(),
+        progress.getLinesRead(),
+        progress.getProductsWritten());
+  }
+
+  private static boolean isCsvHeader(String line) {
+    String first = line.strip();
+    return !first.isEmpty() && !Character.isDigit(first.charAt(0));
+  }
+
+  // Returns {productId, quantity}
+  private static long[] parseCsv(String line) {
+    String[] fields = line.split(",", -1);
+    if (fields.length != 2) {
+      throw new IllegalArgumentException("Expected productId,quantity");
+    }
+    try {
+      return validated(Long.parseLong(fields[0].strip()), Long.parseLong(fields[1].strip()));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Not a number: " + e.getMessage());
+    }
+  }
+
+  private long[] parseNdjson(String line) {
+    JsonNode node;
+    try {
+      node = objectMapper.readTree(line);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Invalid JSON");
+    }
+    JsonNode productId = node.get("productId");
+    JsonNode quantity = node.get("quantity");
+    if (productId == null || !productId.canConvertToLong()) {
+      throw new IllegalArgumentException("Missing or invalid productId");
+    }
+    if (quantity == null || !quantity.canConvertToLong()) {
+      throw new IllegalArgumentException("Missing or invalid quantity");
+    }
+    return validated(productId.longValue(), quantity.longValue());
+  }
+
+  private static long[] validated(long productId, long quantity) {
+    if (productId <= 0) {
+      throw new IllegalArgumentException("productId must be positive");
+    }
+    if (quantity < 0 || quantity > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("quantity must be between 0 and " + Integer.MAX_VALUE);
+    }
+    return new long[] {productId, quantity};
+  }
+
+  private synchronized ImportProgress register(Format format) {
+    ImportProgress progress = new ImportProgress(UUID.randomUUID(), format);
+    imports.put(progress.getId(), progress);
+    // Forget the oldest finished imports
+    imports
+        .values()
+        .removeIf(kept -> imports.size() > MAX_KEPT_IMPORTS && kept.status != Status.RUNNING);
+    return progress;
+  }
+
+  /** Progress of one import. Counters are written by the importing thread only. */
+  @Getter
+  public static class ImportProgress {
+    private final UUID id;
+    private final Format format;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private volatile LocalDateTime finishedAt;
+    private volatile Status status = Status.RUNNING;
+    private volatile long linesRead;
+    private volatile long linesRejected;
+    private volatile long productsWritten;
+    private volatile long chunksCommitted;
+    private volatile String failure;
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+    private ImportProgress(UUID id, Format format) {
+      this.id = id;
+      this.format = format;
+    }
+
+    public List<String> getErrors() {
+      synchronized (errors) {
+        return List.copyOf(errors);
+      }
+    }
+
+    private void reject(long lineNumber, String reason) {
+      linesRejected++;
+      if (errors.size() < MAX_REPORTED_ERRORS) {
+        errors.add("Line " + lineNumber + ": " + reason);
+      }
+    }
+
+    private void finish(Status status, String failure) {
+      this.failure = failure;
+      this.finishedAt = LocalDateTime.now();
+      this.status = status;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.scalableshop.productinventoryservice.service;
+
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes one chunk of imported stock levels to inventory_items in the caller's transaction. The
+ * available quantity of existing products is replaced and missing products are created; reserved
+ * quantities are left alone, as they belong to orders in flight.
+ *
+ * <p>On PostgreSQL the chunk is streamed with COPY into a temporary staging table and merged with
+ * one INSERT ... ON CONFLICT DO UPDATE. Other databases get two JDBC batches: an insert of the
+ * missing products and an update of all of them.
+ *
+ * <p>Rows are written in product ID order, the order the hot-ledger flush and other chunks lock
+ * them in, so concurrent writers wait for each other instead of deadlocking.
+ */
+@Component
+public class StockImportWriter {
+
+  private static final Logger log = LoggerFactory.getLogger(StockImportWriter.class);
+
+  private static final String CREATE_STAGING_TABLE =
+      "CREATE TEMP TABLE IF NOT EXISTS inventory_import_staging "
+          + "(product_id bigint, quantity integer) ON COMMIT DELETE ROWS";
+  private static final String COPY_INTO_STAGING =
+      "COPY inventory_import_staging (product_id, quantity) FROM STDIN WITH (FORMAT csv)";
+  private static final String MERGE_FROM_STAGING =
+      "INSERT INTO inventory_items (product_id, quantity_available, quantity_reserved) "
+          + "SELECT product_id, quantity, 0 FROM inventory_import_staging ORDER BY product_id "
+          + "ON CONFLICT (product_id) "
+          + "DO UPDATE SET quantity_available = EXCLUDED.quantity_available";
+  private static final String INSERT_IF_ABSENT =
+      "INSERT INTO inventory_items (product_id, quantity_available, quantity_reserved) "
+          + "VALUES (?, ?, 0) ON CONFLICT DO NOTHING";
+  private static final String SET_AVAILABLE =
+      "UPDATE inventory_items SET quantity_available = ? WHERE product_id = ?";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final boolean copyEnabled;
+
+  public StockImportWriter(
+      JdbcTemplate jdbcTemplate, @Value("${inventory.import.use-copy:true}") boolean copyEnabled) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.copyEnabled = copyEnabled;
+  }
+
+  /**
+   * Upserts the chunk, given as quantity by product ID with each product once, in the map's
+   * iteration order; callers pass a sorted map.
+   *
+   * @return the number of products written
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public int write(Map<Long, Integer> quantityByProduct) {
+    if (quantityByProduct.isEmpty()) {
+      return 0;
+    }
+    Boolean copied =
+        jdbcTemplate.execute(
+            (ConnectionCallback<Boolean>)
+                connection -> {
+                  if (!copyEnabled || !connection.isWrapperFor(PGConnection.class)) {
+                    return false;
+                  }
+                  copy(connection.unwrap(PGConnection.class), quantityByProduct);
+                  return true;
+                });
+    if (!Boolean.TRUE.equals(copied)) {
+      writeBatches(quantityByProduct);
+    }
+    return quantityByProduct.size();
+  }
+
+  private void copy(PGConnection connection, Map<Long, Integer> quantityByProduct) {
+    StringBuilder csv = new StringBuilder(quantityByProduct.size() * 16);
+    quantityByProduct.forEach(
+        (productId, quantity) -> csv.append(productId).append(',').append(quantity).append('\n'));
+    try {
+      jdbcTemplate.execute(CREATE_STAGING_TABLE);
+      long staged =
+          connection.getCopyAPI().copyIn(COPY_INTO_STAGING, new StringReader(csv.toString()));
+      jdbcTemplate.update(MERGE_FROM_STAGING);
+      log.debug("StockImportWriter: Copied {} rows through the staging table.", staged);
+    } catch (SQLException | IOException e) {
+      throw new IllegalStateException("COPY of stock import chunk failed", e);
+    }
+  }
+
+  private void writeBatches(Map<Long, Integer> quantityByProduct) {
+    List<Object[]> inserts = new ArrayList<>(quantityByProduct.size());
+    List<Object[]> updates = new ArrayList<>(quantityByProduct.size());
+    quantityByProduct.forEach(
+        (productId, quantity) -> {
+          inserts.add(new Object[] {productId, quantity});
+          updates.add(new Object[] {quantity, productId});
+        });
+    // The update also covers products inserted by a concurrent writer in between
+    jdbcTemplate.batchUpdate(INSERT_IF_ABSENT, inserts);
+    jdbcTemplate.batchUpdate(SET_AVAILABLE, updates);
+  }
+}
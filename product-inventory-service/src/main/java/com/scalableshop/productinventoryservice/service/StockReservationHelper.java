@@ -4,40 +4,62 @@ import com.scalableshop.events.event.OrderCreatedEvent;
 import com.scalableshop.events.event.StockReservationFailedEvent;
 import com.scalableshop.events.event.StockReservedEvent;
 import com.scalableshop.productinventoryservice.model.InventoryItem;
-import com.scalableshop.productinventoryservice.model.ProcessedOrderEvent;
+import com.scalableshop.productinventoryservice.model.StockReservation;
 import com.scalableshop.productinventoryservice.repository.InventoryItemRepository;
-import com.scalableshop.productinventoryservice.repository.ProcessedOrderEventRepository;
+import com.scalableshop.productinventoryservice.repository.StockReservationRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cloud.stream.function.StreamBridge;
-import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
-import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
 public class StockReservationHelper {
 
   private static final Logger log = LoggerFactory.getLogger(StockReservationHelper.class);
   private final InventoryItemRepository inventoryItemRepository;
-  private final ProcessedOrderEventRepository processedOrderEventRepository;
-  private final StreamBridge streamBridge;
+  private final OrderEventIdempotency orderEventIdempotency;
+  private final HotStockLedger hotStockLedger;
+  private final StockEventOutbox stockEventOutbox;
+  private final StockReservationRepository stockReservationRepository;
+  private final ReservationExpiryScheduler reservationExpiryScheduler;
+  private final InventorySnapshotCache inventorySnapshotCache;
+  private final ReservationPolicy reservationPolicy;
 
   @Autowired
   public StockReservationHelper(
       InventoryItemRepository inventoryItemRepository,
-      ProcessedOrderEventRepository processedOrderEventRepository,
-      StreamBridge streamBridge) {
+      OrderEventIdempotency orderEventIdempotency,
+      HotStockLedger hotStockLedger,
+      StockEventOutbox stockEventOutbox,
+      StockReservationRepository stockReservationRepository,
+      ReservationExpiryScheduler reservationExpiryScheduler,
+      InventorySnapshotCache inventorySnapshotCache,
+      @Value("${inventory.reservations.policy:ALL_OR_NOTHING}")
+          ReservationPolicy reservationPolicy) {
     this.inventoryItemRepository = inventoryItemRepository;
-    this.processedOrderEventRepository = processedOrderEventRepository;
-    this.streamBridge = streamBridge;
+    this.orderEventIdempotency = orderEventIdempotency;
+    this.hotStockLedger = hotStockLedger;
+    this.stockEventOutbox = stockEventOutbox;
+    this.stockReservationRepository = stockReservationRepository;
+    this.reservationExpiryScheduler = reservationExpiryScheduler;
+    this.inventorySnapshotCache = inventorySnapshotCache;
+    this.reservationPolicy = reservationPolicy;
   }
 
   @Transactional
@@ -49,99 +71,326 @@ public class StockReservationHelper {
         "TX_DEBUG: reserveStock called for Order ID {}. Is transaction active? {}",
         orderId,
         TransactionSynchronizationManager.isActualTransactionActive());
-    try {
-      log.debug(
-          "TX_DEBUG: Before saving ProcessedOrderEvent for Order ID {}. Is transaction active? {}",
-          orderId,
-          TransactionSynchronizationManager.isActualTransactionActive());
-      // Try to record this orderId as processed. If a record with this orderId
-      // already exists (due to the unique constraint), a DataIntegrityViolationException
-      // will be thrown, indicating a duplicate event.
-      processedOrderEventRepository.save(new ProcessedOrderEvent(orderId, LocalDateTime.now()));
-      log.debug(
-          "TX_DEBUG: After saving ProcessedOrderEvent for Order ID {}. Is transaction active? {}",
-          orderId,
-          TransactionSynchronizationManager.isActualTransactionActive());
-      log.info("Successfully recorded Order ID: {} as new for processing.", orderId);
-    } catch (DataIntegrityViolationException e) {
-      log.warn(
-          "Order ID: {} has already been processed or is being processed concurrently. Skipping stock reservation.",
-          orderId);
-      log.debug(
-          "TX_DEBUG: Exiting reserveStock (duplicate). Is transaction active? {}",
-          TransactionSynchronizationManager.isActualTransactionActive());
-      // If we catch this, it means the event was a duplicate.
+    if (!orderEventIdempotency.findProcessed(List.of(orderId)).isEmpty()) {
+      log.warn("Order ID: {} has already been processed. Skipping stock reservation.", orderId);
       // We return false to indicate that no new action was taken.
       return false;
     }
 
-    List<StockReservationFailedEvent.FailedItem> failedItems = new ArrayList<>();
-    List<StockReservedEvent.ReservedItem> reservedItems = new ArrayList<>();
-    boolean allReserved = true;
+    Map<Long, Integer> requestedByProduct = requestedByProduct(items);
+    Map<Long, InventoryItem> inventoryByProduct = lockInventory(requestedByProduct.keySet());
+    Outcome outcome =
+        reserveOrder(
+            orderId, customerId, requestedByProduct, inventoryByProduct, reservationPolicy);
+
+    if (outcome.getResult() == Result.DUPLICATE) {
+      return false;
+    }
+    addToOutbox(outcome);
+    // A failed reservation changes no stock, so its failure event is committed with nothing but
+    // the processed record instead of being rolled back
+    return outcome.getResult() == Result.RESERVED;
+  }
+
+  /** Reserves stock for a batch of orders under the configured reservation policy. */
+  @Transactional
+  public int reserveStockBatch(List<OrderCreatedEvent> events) {
+    return reserveStockBatch(events, reservationPolicy);
+  }
+
+  /**
+   * Reserves stock for a batch of orders in one transaction. Orders repeated within the batch or
+   * processed before are skipped, every inventory row the batch touches is read and locked with
+   * one query, and the orders are then decided in arrival order against those rows in memory. A
+   * failed order does not roll back the others: it is reported and recorded as processed, like a
+   * failed single reservation. The resulting stock events are added to the outbox together once all
+   * orders are decided.
+   *
+   * <p>The policy decides orders whose items are not all in stock: rejected under {@link
+   * ReservationPolicy#ALL_OR_NOTHING}, or reserved with what is in stock under {@link
+   * ReservationPolicy#PARTIAL} and {@link ReservationPolicy#BACKORDER}.
+   *
+   * @return the number of orders whose stock was reserved, in full or in part
+   */
+  @Transactional
+  public int reserveStockBatch(List<OrderCreatedEvent> events, ReservationPolicy policy) {
+    Map<Long, OrderCreatedEvent> ordersById = new LinkedHashMap<>();
+    events.forEach(event -> ordersById.putIfAbsent(event.getOrderId(), event));
+    Set<Long> processed = orderEventIdempotency.findProcessed(ordersById.keySet());
+    if (!processed.isEmpty()) {
+      log.warn(
+          "{} order(s) in batch have already been processed. Skipping stock reservation: {}",
+          processed.size(),
+          processed);
+      ordersById.keySet().removeAll(processed);
+    }
+    if (ordersById.isEmpty()) {
+      return 0;
+    }
+
+    Map<Long, Map<Long, Integer>> requestedByOrder = new LinkedHashMap<>();
+    Set<Long> productIds = new TreeSet<>();
+    ordersById.forEach(
+        (orderId, event) -> {
+          Map<Long, Integer> requested = requestedByProduct(event.getOrderItems());
+          requestedByOrder.put(orderId, requested);
+          productIds.addAll(requested.keySet());
+        });
+    Map<Long, InventoryItem> inventoryByProduct = lockInventory(productIds);
 
+    List<Outcome> outcomes = new ArrayList<>();
+    ordersById.forEach(
+        (orderId, event) ->
+            outcomes.add(
+                reserveOrder(
+                    orderId,
+                    event.getCustomerId(),
+                    requestedByOrder.get(orderId),
+                    inventoryByProduct,
+                    policy)));
+
+    int reserved = 0;
+    for (Outcome outcome : outcomes) {
+      if (outcome.getResult() == Result.RESERVED) {
+        reserved++;
+      }
+      if (outcome.getResult() != Result.DUPLICATE) {
+        addToOutbox(outcome);
+      }
+    }
+    log.info(
+        "Processed batch of {} OrderCreatedEvent(s): {} reserved, {} failed.",
+        events.size(),
+        reserved,
+        outcomes.stream().filter(outcome -> outcome.getResult() == Result.FAILED).count());
+    return reserved;
+  }
+
+  // Requested quantity per product, in product ID order
+  private static Map<Long, Integer> requestedByProduct(
+      List<OrderCreatedEvent.OrderItemEvent> items) {
+    Map<Long, Integer> requestedByProduct = new TreeMap<>();
     for (OrderCreatedEvent.OrderItemEvent item : items) {
-      Optional<InventoryItem> optionalInventoryItem =
-          inventoryItemRepository.findByProductId(item.getProductId());
-
-      if (optionalInventoryItem.isEmpty()) {
-        log.warn("Product ID {} not found in inventory. Cannot reserve.", item.getProductId());
-        failedItems.add(
-            new StockReservationFailedEvent.FailedItem(item.getProductId(), item.getQuantity(), 0));
-        allReserved = false;
+      requestedByProduct.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+    }
+    return requestedByProduct;
+  }
+
+  // One statement reads and locks every row needed. Rows are locked in product ID order, so
+  // concurrent reservations sharing products queue up instead of deadlocking, and none of them can
+  // overwrite another's reservation. Hot products are reserved in memory by the ledger instead.
+  private Map<Long, InventoryItem> lockInventory(Collection<Long> productIds) {
+    Set<Long> lockedProductIds =
+        productIds.stream()
+            .filter(productId -> !hotStockLedger.isHot(productId))
+            .collect(Collectors.toCollection(TreeSet::new));
+    if (lockedProductIds.isEmpty()) {
+      return Map.of();
+    }
+    return inventoryItemRepository.findAllByProductIdInForUpdate(lockedProductIds).stream()
+        .collect(Collectors.toMap(InventoryItem::getProductId, Function.identity()));
+  }
+
+  // Decides one order against the locked rows in a single pass over its items, granting each the
+  // stock the policy allows. Rows are only changed once the policy accepts the order; a rejected
+  // order changes no stock, so no rollback is needed. Either way the order is recorded as processed
+  // with the event that reports it. The row changes are flushed at commit as one JDBC batch of
+  // updates.
+  private Outcome reserveOrder(
+      Long orderId,
+      Long customerId,
+      Map<Long, Integer> requestedByProduct,
+      Map<Long, InventoryItem> inventoryByProduct,
+      ReservationPolicy policy) {
+    Map<Long, Integer> granted = new TreeMap<>();
+    Map<Long, Integer> hotRequested = new TreeMap<>();
+    List<StockReservationFailedEvent.FailedItem> shortItems = new ArrayList<>();
+    boolean unknownProducts = false;
+
+    for (Map.Entry<Long, Integer> requested : requestedByProduct.entrySet()) {
+      Long productId = requested.getKey();
+      int requestedQuantity = requested.getValue();
+      if (hotStockLedger.isHot(productId)) {
+        hotRequested.put(productId, requestedQuantity);
         continue;
       }
 
-      InventoryItem inventoryItem = optionalInventoryItem.get();
-      int requestedQuantity = item.getQuantity();
-
-      if (inventoryItem.getQuantityAvailable() >= requestedQuantity) {
-        inventoryItem.setQuantityAvailable(
-            inventoryItem.getQuantityAvailable() - requestedQuantity);
-        inventoryItem.setQuantityReserved(inventoryItem.getQuantityReserved() + requestedQuantity);
-        inventoryItemRepository.save(inventoryItem);
-        reservedItems.add(
-            new StockReservedEvent.ReservedItem(item.getProductId(), requestedQuantity));
-        log.info(
-            "Reserved {} units of Product ID: {} for Order ID: {}",
-            requestedQuantity,
-            item.getProductId(),
-            orderId);
-      } else {
+      InventoryItem inventoryItem = inventoryByProduct.get(productId);
+      if (inventoryItem == null) {
+        log.warn("Product ID {} not found in inventory. Cannot reserve.", productId);
+        unknownProducts = true;
+        shortItems.add(new StockReservationFailedEvent.FailedItem(productId, requestedQuantity, 0));
+        continue;
+      }
+      int available = inventoryItem.getQuantityAvailable();
+      if (available < requestedQuantity) {
         log.warn(
             "Insufficient stock for Product ID: {}. Available: {}, Requested: {}",
-            item.getProductId(),
-            inventoryItem.getQuantityAvailable(),
+            productId,
+            available,
             requestedQuantity);
-        failedItems.add(
-            new StockReservationFailedEvent.FailedItem(
-                item.getProductId(), requestedQuantity, inventoryItem.getQuantityAvailable()));
-        allReserved = false;
+        shortItems.add(
+            new StockReservationFailedEvent.FailedItem(productId, requestedQuantity, available));
       }
+      granted.put(productId, Math.min(available, requestedQuantity));
     }
 
-    if (allReserved) {
-      log.debug(
-          "TX_DEBUG: Successful reservation. Is transaction active? {}. Committing...",
-          TransactionSynchronizationManager.isActualTransactionActive());
-      StockReservedEvent event = new StockReservedEvent(orderId, customerId, reservedItems);
-      streamBridge.send("stockReservedEventProducer-out-0", event);
-      log.info("Published StockReservedEvent for Order ID: {}", orderId);
-      return true;
-    } else {
-      log.debug(
-          "TX_DEBUG: Failed reservation. Is transaction active? {}. Throwing RuntimeException, expecting rollback...",
-          TransactionSynchronizationManager.isActualTransactionActive());
-      String reason = "Insufficient stock for some items in order " + orderId;
-      StockReservationFailedEvent event =
-          new StockReservationFailedEvent(orderId, customerId, reason, failedItems);
-      streamBridge.send("stockReservationFailedEventProducer-out-0", event);
-      log.warn(
-          "Published StockReservationFailedEvent for Order ID: {} with reason: {}",
+    // Units taken here are given back by the ledger if this transaction rolls back
+    HotStockLedger.Reservation hotReservation = null;
+    if (!hotRequested.isEmpty()) {
+      if (policy != ReservationPolicy.ALL_OR_NOTHING) {
+        hotReservation = hotStockLedger.takeUpTo(hotRequested);
+      } else if (shortItems.isEmpty()) {
+        hotReservation = hotStockLedger.tryTake(hotRequested).orElse(null);
+      }
+      Map<Long, Integer> hotTaken =
+          hotReservation == null ? Map.of() : hotReservation.getTaken();
+      for (Map.Entry<Long, Integer> requested : hotRequested.entrySet()) {
+        Long productId = requested.getKey();
+        int requestedQuantity = requested.getValue();
+        int taken = hotTaken.getOrDefault(productId, 0);
+        if (taken < requestedQuantity) {
+          OptionalInt available = hotStockLedger.getAvailable(productId);
+          unknownProducts |= available.isEmpty();
+          // Stock still in the ledger was not taken only because another item was short
+          int reported = hotReservation == null ? available.orElse(0) : taken;
+          if (hotReservation != null || reported < requestedQuantity) {
+            log.warn(
+                "Insufficient stock for hot Product ID: {}. Available: {}, Requested: {}",
+                productId,
+                reported,
+                requestedQuantity);
+            shortItems.add(
+                new StockReservationFailedEvent.FailedItem(productId, requestedQuantity, reported));
+          }
+        }
+        granted.put(productId, taken);
+      }
+    }
+
+    // Under all or nothing, hot stock is not taken at all if anything is short
+    boolean complete =
+        shortItems.isEmpty() && (hotRequested.isEmpty() || hotReservation != null);
+    String rejection = rejectionReason(orderId, policy, complete, unknownProducts, granted);
+    if (rejection != null) {
+      if (hotReservation != null) {
+        hotReservation.giveBack();
+      }
+      // Recorded together with its failure event, so a redelivery after a restock does not reserve
+      // stock for an order the order service has already failed
+      if (!orderEventIdempotency.recordIfNew(orderId)) {
+        log.warn("Order ID: {} has already been processed. Skipping stock reservation.", orderId);
+        return new Outcome(Result.DUPLICATE, null);
+      }
+      return new Outcome(
+          Result.FAILED,
+          new StockReservationFailedEvent(orderId, customerId, rejection, shortItems));
+    }
+
+    // Record this orderId as processed. INSERT ... ON CONFLICT DO NOTHING reports an order
+    // processed concurrently by another consumer without throwing.
+    if (!orderEventIdempotency.recordIfNew(orderId)) {
+      if (hotReservation != null) {
+        hotReservation.giveBack();
+      }
+      log.warn("Order ID: {} has already been processed. Skipping stock reservation.", orderId);
+      return new Outcome(Result.DUPLICATE, null);
+    }
+
+    // The reservation ledger lets cancellation and expiry release exactly what was reserved
+    LocalDateTime expiresAt = reservationExpiryScheduler.track(orderId);
+    List<StockReservation> ledgerEntries = new ArrayList<>();
+    List<StockReservedEvent.ReservedItem> reservedItems = new ArrayList<>();
+    for (Map.Entry<Long, Integer> requested : requestedByProduct.entrySet()) {
+      Long productId = requested.getKey();
+      int requestedQuantity = requested.getValue();
+      int quantity = granted.getOrDefault(productId, 0);
+      int backordered = policy == ReservationPolicy.BACKORDER ? requestedQuantity - quantity : 0;
+      // Items dropped under PARTIAL are left out, so every item listed has units to ship
+      if (quantity == 0 && backordered == 0) {
+        continue;
+      }
+      reservedItems.add(
+          new StockReservedEvent.ReservedItem(productId, quantity, requestedQuantity, backordered));
+      if (quantity == 0) {
+        continue;
+      }
+      InventoryItem inventoryItem = inventoryByProduct.get(productId);
+      if (inventoryItem != null) {
+        inventoryItem.setQuantityAvailable(inventoryItem.getQuantityAvailable() - quantity);
+        inventoryItem.setQuantityReserved(inventoryItem.getQuantityReserved() + quantity);
+        inventorySnapshotCache.putAfterCommit(inventoryItem);
+      }
+      ledgerEntries.add(new StockReservation(orderId, productId, quantity, expiresAt));
+      log.info(
+          "Reserved {} units of Product ID: {} for Order ID: {}", quantity, productId, orderId);
+    }
+    stockReservationRepository.saveAll(ledgerEntries);
+    if (hotReservation != null) {
+      hotStockLedger.log(orderId, hotReservation);
+    }
+
+    StockReservedEvent.Fulfilment fulfilment = StockReservedEvent.Fulfilment.COMPLETE;
+    if (!complete) {
+      fulfilment =
+          policy == ReservationPolicy.BACKORDER
+              ? StockReservedEvent.Fulfilment.BACKORDERED
+              : StockReservedEvent.Fulfilment.PARTIAL;
+      log.info(
+          "Order ID: {} reserved with {} fulfilment. {} item(s) short.",
           orderId,
-          reason);
+          fulfilment,
+          shortItems.size());
+    }
+    return new Outcome(
+        Result.RESERVED,
+        new StockReservedEvent(orderId, customerId, reservedItems, fulfilment));
+  }
+
+  // Why the policy rejects the order, or null if it is reserved
+  private static String rejectionReason(
+      Long orderId,
+      ReservationPolicy policy,
+      boolean complete,
+      boolean unknownProducts,
+      Map<Long, Integer> granted) {
+    switch (policy) {
+      case PARTIAL:
+        return granted.values().stream().allMatch(quantity -> quantity == 0)
+            ? "No stock available for any item in order " + orderId
+            : null;
+      case BACKORDER:
+        return unknownProducts ? "Unknown products in order " + orderId : null;
+      default:
+        return complete ? null : "Insufficient stock for some items in order " + orderId;
+    }
+  }
 
-      throw new RuntimeException(
-          "Stock reservation failed for order " + orderId + ". Reason: " + reason);
+  // The event is published by StockEventRelayer once this transaction has committed
+  private void addToOutbox(Outcome outcome) {
+    if (outcome.getResult() == Result.RESERVED) {
+      StockReservedEvent event = (StockReservedEvent) outcome.getEvent();
+      stockEventOutbox.add(event.getOrderId(), event);
+      log.info("StockReservedEvent added to outbox for Order ID: {}", event.getOrderId());
+    } else {
+      StockReservationFailedEvent event = (StockReservationFailedEvent) outcome.getEvent();
+      stockEventOutbox.add(event.getOrderId(), event);
+      log.warn(
+          "StockReservationFailedEvent added to outbox for Order ID: {} with reason: {}",
+          event.getOrderId(),
+          event.getReason());
     }
   }
+
+  private enum Result {
+    RESERVED,
+    FAILED,
+    DUPLICATE
+  }
+
+  @lombok.Value
+  private static class Outcome {
+    Result result;
+    Object event;
+  }
 }
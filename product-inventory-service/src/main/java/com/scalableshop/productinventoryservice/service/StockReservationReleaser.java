@@ -0,0 +1,108 @@
+package com.scalableshop.productinventoryservice.service;
+
+import com.scalableshop.productinventoryservice.model.StockReservation;
+import com.scalableshop.productinventoryservice.repository.InventoryItemRepository;
+import com.scalableshop.productinventoryservice.repository.StockReservationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Returns the stock held in stock_reservations to inventory_items. The reservations of a batch of
+ * orders are locked and deleted together, and the released quantities are applied with one
+ * atomic UPDATE per product, in product ID order like reservations take their row locks.
+ */
+@Component
+public class StockReservationReleaser {
+
+  private static final Logger log = LoggerFactory.getLogger(StockReservationReleaser.class);
+
+  private final StockReservationRepository stockReservationRepository;
+  private final InventoryItemRepository inventoryItemRepository;
+  private final HotStockLedger hotStockLedger;
+  private final OrderEventIdempotency orderEventIdempotency;
+  private final InventorySnapshotCache inventorySnapshotCache;
+
+  public StockReservationReleaser(
+      StockReservationRepository stockReservationRepository,
+      InventoryItemRepository inventoryItemRepository,
+      HotStockLedger hotStockLedger,
+      OrderEventIdempotency orderEventIdempotency,
+      InventorySnapshotCache inventorySnapshotCache) {
+    this.stockReservationRepository = stockReservationRepository;
+    this.inventoryItemRepository = inventoryItemRepository;
+    this.hotStockLedger = hotStockLedger;
+    this.orderEventIdempotency = orderEventIdempotency;
+    this.inventorySnapshotCache = inventorySnapshotCache;
+  }
+
+  /**
+   * Releases the stock of cancelled orders. A cancelled order that was never reserved is recorded
+   * as processed, so an OrderCreatedEvent arriving after its cancellation reserves nothing.
+   *
+   * @return the number of orders whose stock was released
+   */
+  @Transactional
+  public int releaseCancelled(Collection<Long> orderIds) {
+    Set<Long> releasedOrderIds = release(orderIds);
+    for (Long orderId : new TreeSet<>(orderIds)) {
+      if (!releasedOrderIds.contains(orderId) && orderEventIdempotency.recordIfNew(orderId)) {
+        log.info(
+            "Order ID: {} was cancelled before its stock was reserved. It will not be reserved.",
+            orderId);
+      }
+    }
+    return releasedOrderIds.size();
+  }
+
+  /**
+   * Releases the stock of orders whose reservations have expired. Orders already released, for
+   * example by a cancellation, are skipped.
+   *
+   * @return the number of orders whose stock was released
+   */
+  @Transactional
+  public int releaseExpired(Collection<Long> orderIds) {
+    return release(orderIds).size();
+  }
+
+  private Set<Long> release(Collection<Long> orderIds) {
+    Set<Long> releasedOrderIds = new TreeSet<>();
+    if (orderIds.isEmpty()) {
+      return releasedOrderIds;
+    }
+    List<StockReservation> reservations =
+        stockReservationRepository.findAllByOrderIdInForUpdate(orderIds);
+    if (reservations.isEmpty()) {
+      return releasedOrderIds;
+    }
+
+    Map<Long, Integer> quantityByProduct = new TreeMap<>();
+    for (StockReservation reservation : reservations) {
+      quantityByProduct.merge(reservation.getProductId(), reservation.getQuantity(), Integer::sum);
+      releasedOrderIds.add(reservation.getOrderId());
+    }
+    stockReservationRepository.deleteAllInBatch(reservations);
+    quantityByProduct.forEach(
+        (productId, quantity) -> {
+          inventoryItemRepository.releaseReservations(productId, quantity);
+          hotStockLedger.releaseAfterCommit(productId, quantity);
+        });
+    inventorySnapshotCache.evictAfterCommit(List.copyOf(quantityByProduct.keySet()));
+
+    log.info(
+        "Released reservations of {} order(s) across {} product(s): {}",
+        releasedOrderIds.size(),
+        quantityByProduct.size(),
+        releasedOrderIds);
+    return releasedOrderIds;
+  }
+}
@@ -0,0 +1,66 @@
+package com.scalableshop.productinventoryservice.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Available stock of one product split over several counters. Concurrent reservations start on
+ * different stripes, so they rarely contend on the same counter. Only a reservation no single
+ * stripe can satisfy takes the lock, gathering units from all stripes, which keeps the total
+ * exact: a reservation fails only if the whole product is short.
+ */
+class StripedStockCounter {
+
+  private final AtomicInteger[] stripes;
+
+  StripedStockCounter(int stripeCount, int available) {
+    stripes = new AtomicInteger[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      // Spread the stock evenly; the first stripes take the remainder
+      int share = available / stripeCount + (i < available % stripeCount ? 1 : 0);
+      stripes[i] = new AtomicInteger(share);
+    }
+  }
+
+  boolean tryTake(int quantity) {
+    int start = homeStripe();
+    for (int i = 0; i < stripes.length; i++) {
+      AtomicInteger stripe = stripes[(start + i) % stripes.length];
+      int current = stripe.get();
+      while (current >= quantity) {
+        if (stripe.compareAndSet(current, current - quantity)) {
+          return true;
+        }
+        current = stripe.get();
+      }
+    }
+    return takeAcrossStripes(quantity, start);
+  }
+
+  void release(int quantity) {
+    stripes[homeStripe()].addAndGet(quantity);
+  }
+
+  int available() {
+    int total = 0;
+    for (AtomicInteger stripe : stripes) {
+      total += stripe.get();
+    }
+    return total;
+  }
+
+  // Drains every stripe so that units spread over several stripes can be combined. Fast-path
+  // takes only ever decrease a stripe, so under the lock the drained total is the true total.
+  private synchronized boolean takeAcrossStripes(int quantity, int start) {
+    int drained = 0;
+    for (AtomicInteger stripe : stripes) {
+      drained += stripe.getAndSet(0);
+    }
+    boolean taken = drained >= quantity;
+    stripes[start].addAndGet(taken ? drained - quantity : drained);
+    return taken;
+  }
+
+  private int homeStripe() {
+    return (int) (Thread.currentThread().getId() % stripes.length);
+  }
+}
@@ -0,0 +1,82 @@
+package com.scalableshop.productinventoryservice.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hashed timer wheel. Time is cut into ticks and each item is kept in the slot of its deadline
+ * tick, modulo the number of slots, so scheduling and cancelling are O(1) and each advance only
+ * visits the slots of the ticks that passed. Items due more than one revolution ahead share a
+ * slot with earlier ones and are skipped until their own round comes.
+ */
+class TimerWheel<T> {
+
+  private final long tickMillis;
+  private final List<Set<T>> slots;
+  private final Map<T, Long> deadlineTicks = new HashMap<>();
+  private long nextTick; // First tick not yet advanced over
+
+  TimerWheel(int slotCount, long tickMillis, long nowMillis) {
+    if (slotCount < 1 || tickMillis < 1) {
+      throw new IllegalArgumentException("Slot count and tick must be positive");
+    }
+    this.tickMillis = tickMillis;
+    this.slots = new ArrayList<>(slotCount);
+    for (int i = 0; i < slotCount; i++) {
+      slots.add(new LinkedHashSet<>());
+    }
+    this.nextTick = nowMillis / tickMillis;
+  }
+
+  /** Schedules the item, replacing its previous deadline if it had one. */
+  synchronized void schedule(T item, long deadlineMillis) {
+    cancel(item);
+    // Due on the first tick at or after the deadline, and never on a tick already passed
+    long tick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, nextTick);
+    deadlineTicks.put(item, tick);
+    slotOf(tick).add(item);
+  }
+
+  synchronized boolean cancel(T item) {
+    Long tick = deadlineTicks.remove(item);
+    if (tick == null) {
+      return false;
+    }
+    slotOf(tick).remove(item);
+    return true;
+  }
+
+  /** Removes and returns the items whose deadline has passed. */
+  synchronized List<T> advance(long nowMillis) {
+    long nowTick = nowMillis / tickMillis;
+    List<T> due = new ArrayList<>();
+    // After a pause longer than one revolution every slot is visited once
+    long lastTick = Math.min(nowTick, nextTick + slots.size() - 1);
+    for (long tick = nextTick; tick <= lastTick; tick++) {
+      Iterator<T> items = slotOf(tick).iterator();
+      while (items.hasNext()) {
+        T item = items.next();
+        if (deadlineTicks.get(item) <= nowTick) {
+          items.remove();
+          deadlineTicks.remove(item);
+          due.add(item);
+        }
+      }
+    }
+    nextTick = Math.max(nextTick, nowTick + 1);
+    return due;
+  }
+
+  synchronized int size() {
+    return deadlineTicks.size();
+  }
+
+  private Set<T> slotOf(long tick) {
+    return slots.get((int) (tick % slots.size()));
+  }
+}
@@ -0,0 +1,185 @@
+package com.scalableshop.productinventoryservice;
+
+import com.scalableshop.events.event.OrderCreatedEvent;
+import com.scalableshop.productinventoryservice.model.InventoryItem;
+import com.scalableshop.productinventoryservice.repository.HotStockReservationRepository;
+import com.scalableshop.productinventoryservice.repository.InventoryItemRepository;
+import com.scalableshop.productinventoryservice.service.HotStockLedger;
+import com.scalableshop.productinventoryservice.service.InventoryService;
+import com.scalableshop.productinventoryservice.service.InventorySnapshotCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Reserves hot products through the in-memory ledger and checks the log it leaves behind. The
+ * scheduled flush is pushed out of the way, so the tests decide when the log is folded.
+ */
+@SpringBootTest(
+    properties = {
+      "inventory.hot-ledger.product-ids=4201,4202,4203,4204,4205",
+      "inventory.hot-ledger.stripes=4",
+      "inventory.hot-ledger.flush-interval-ms=3600000",
+      // Own database, so this context's create-drop leaves the other test context's schema alone
+      "spring.datasource.url=jdbc:h2:mem:inventorydb_hot_ledger_test;DB_CLOSE_DELAY=-1;"
+          + "MODE=PostgreSQL;LOCK_TIMEOUT=10000"
+    })
+@ActiveProfiles("test")
+public class HotStockLedgerIntegrationTest {
+
+  @Autowired private HotStockLedger hotStockLedger;
+
+  @Autowired private InventoryService inventoryService;
+
+  @Autowired private InventoryItemRepository inventoryItemRepository;
+
+  @Autowired private HotStockReservationRepository hotStockReservationRepository;
+
+  @Autowired private InventorySnapshotCache inventorySnapshotCache;
+
+  @Autowired private TransactionTemplate transactionTemplate;
+
+  @MockBean private StreamBridge streamBridge;
+
+  @BeforeEach
+  public void setup() {
+    hotStockReservationRepository.deleteAll();
+    when(streamBridge.send(anyString(), any())).thenReturn(true);
+  }
+
+  @Test
+  void flush_shouldFoldLoggedReservationsIntoInventory() {
+    // Given
+    Long productId = 4201L;
+    inventoryService.initializeStock(productId, 10).block();
+    reserve(42011L, productId, 3);
+    reserve(42012L, productId, 2);
+
+    // Reserved in memory and logged, but inventory_items is not touched yet
+    assertThat(hotStockReservationRepository.count()).isEqualTo(2);
+    assertThat(hotStockLedger.getAvailable(productId)).hasValue(5);
+    assertThat(inventoryItem(productId).getQuantityAvailable()).isEqualTo(10);
+
+    // When
+    hotStockLedger.flush();
+
+    // Then
+    InventoryItem item = inventoryItem(productId);
+    assertThat(item.getQuantityAvailable()).isEqualTo(5);
+    assertThat(item.getQuantityReserved()).isEqualTo(5);
+    assertThat(hotStockReservationRepository.count()).isZero();
+    assertThat(hotStockLedger.getAvailable(productId)).hasValue(5);
+  }
+
+  @Test
+  void counter_shouldRebuildFromInventoryAndUnflushedLog_AfterRestart() {
+    // Given
+    Long productId = 4202L;
+    inventoryService.initializeStock(productId, 10).block();
+    reserve(42021L, productId, 3);
+    hotStockLedger.flush();
+    reserve(42022L, productId, 4);
+
+    // When
+    // A fresh ledger has no counters, as after a restart
+    HotStockLedger restarted = newLedger();
+
+    // Then
+    // 10 in inventory_items less the 3 already folded and the 4 still in the log
+    assertThat(restarted.getAvailable(productId)).hasValue(3);
+    restarted.flush();
+    assertThat(inventoryItem(productId).getQuantityAvailable()).isEqualTo(3);
+    assertThat(newLedger().getAvailable(productId)).hasValue(3);
+  }
+
+  @Test
+  void tryTakeAndTakeUpTo_shouldGiveBackUnits_WhenTransactionRollsBack() {
+    // Given
+    Long productId = 4203L;
+    Long otherProductId = 4204L;
+    inventoryService.initializeStock(productId, 10).block();
+    inventoryService.initializeStock(otherProductId, 5).block();
+
+    // When
+    transactionTemplate.executeWithoutResult(
+        status -> {
+          HotStockLedger.Reservation all =
+              hotStockLedger.tryTake(Map.of(productId, 4)).orElseThrow();
+          HotStockLedger.Reservation upTo = hotStockLedger.takeUpTo(Map.of(otherProductId, 20));
+          hotStockLedger.log(42031L, all);
+          hotStockLedger.log(42031L, upTo);
+          assertThat(upTo.getTaken()).containsEntry(otherProductId, 5);
+          assertThat(hotStockLedger.getAvailable(productId)).hasValue(6);
+          assertThat(hotStockLedger.getAvailable(otherProductId)).hasValue(0);
+          status.setRollbackOnly();
+        });
+
+    // Then
+    assertThat(hotStockLedger.getAvailable(productId)).hasValue(10);
+    assertThat(hotStockLedger.getAvailable(otherProductId)).hasValue(5);
+    assertThat(hotStockReservationRepository.count()).isZero();
+    // The counters still match what a restarted ledger would rebuild
+    assertThat(newLedger().getAvailable(productId)).hasValue(10);
+  }
+
+  @Test
+  void updateStock_shouldKeepUnflushedReservationsAndRefreshCounter() {
+    // Given
+    Long productId = 4205L;
+    inventoryService.initializeStock(productId, 10).block();
+    reserve(42051L, productId, 3);
+
+    // When
+    inventoryService.updateStock(productId, 5).block();
+
+    // Then
+    // The delta is added in place; the logged reservation is still folded in by the next flush
+    assertThat(inventoryItem(productId).getQuantityAvailable()).isEqualTo(15);
+    assertThat(hotStockLedger.getAvailable(productId)).hasValue(12);
+    hotStockLedger.flush();
+    assertThat(inventoryItem(productId).getQuantityAvailable()).isEqualTo(12);
+  }
+
+  private void reserve(Long orderId, Long productId, int quantity) {
+    OrderCreatedEvent event =
+        new OrderCreatedEvent(
+            orderId,
+            42L,
+            LocalDateTime.now(),
+            BigDecimal.valueOf(quantity * 10.0),
+            Collections.singletonList(new OrderCreatedEvent.OrderItemEvent(productId, quantity)));
+    inventoryService.orderCreatedEventConsumer().accept(List.of(event));
+  }
+
+  private InventoryItem inventoryItem(Long productId) {
+    return inventoryItemRepository.findByProductId(productId).orElseThrow();
+  }
+
+  private HotStockLedger newLedger() {
+    return new HotStockLedger(
+        hotStockReservationRepository,
+        inventoryItemRepository,
+        transactionTemplate,
+        inventorySnapshotCache,
+        Set.of(4201L, 4202L, 4203L, 4204L),
+        4,
+        1000);
+  }
+}
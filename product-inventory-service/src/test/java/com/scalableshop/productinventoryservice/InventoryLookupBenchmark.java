@@ -0,0 +1,104 @@
+package com.scalableshop.productinventoryservice;
+
+import com.scalableshop.productinventoryservice.repository.InventoryItemRepository;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures findByProductId as the inventory grows. Excluded from the regular test run; run with
+ * {@code ./gradlew :product-inventory-service:benchmark [-Pbenchmark.sizes=1000,10000000]}.
+ * Against the test profile this uses in-memory H2; point the datasource at PostgreSQL for
+ * production-like numbers.
+ */
+@Tag("benchmark")
+@SpringBootTest
+@ActiveProfiles("test")
+public class InventoryLookupBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(InventoryLookupBenchmark.class);
+
+  private static final int INSERT_BATCH_SIZE = 10_000;
+  private static final int WARMUP_LOOKUPS = 2_000;
+  private static final int MEASURED_LOOKUPS = 10_000;
+
+  @Autowired private InventoryItemRepository inventoryItemRepository;
+
+  @Autowired private JdbcTemplate jdbcTemplate;
+
+  @MockBean private StreamBridge streamBridge;
+
+  @Test
+  void findByProductId_shouldStayFlat_fromThousandsToMillionsOfProducts() {
+    List<Integer> sizes =
+        Arrays.stream(System.getProperty("benchmark.sizes", "1000,100000").split(","))
+            .map(String::trim)
+            .map(Integer::valueOf)
+            .sorted()
+            .toList();
+    Map<Integer, Double> microsPerLookup = new LinkedHashMap<>();
+
+    inventoryItemRepository.deleteAllInBatch();
+    int loaded = 0;
+    for (int size : sizes) {
+      loaded = loadProducts(loaded, size);
+      lookUpRandomProducts(size, WARMUP_LOOKUPS);
+      long start = System.nanoTime();
+      lookUpRandomProducts(size, MEASURED_LOOKUPS);
+      double micros = (System.nanoTime() - start) / 1_000.0 / MEASURED_LOOKUPS;
+      microsPerLookup.put(size, micros);
+      log.info("products={} lookup={} us", size, String.format("%.1f", micros));
+    }
+    inventoryItemRepository.deleteAllInBatch();
+
+    // An index lookup grows with log(n); a sequential scan would grow with n, i.e. 1000x here
+    double smallest = microsPerLookup.get(sizes.get(0));
+    double largest = microsPerLookup.get(sizes.get(sizes.size() - 1));
+    assertThat(largest).isLessThan(smallest * 5);
+  }
+
+  private int loadProducts(int from, int to) {
+    List<Object[]> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+    for (long productId = from + 1; productId <= to; productId++) {
+      batch.add(new Object[] {productId, 100});
+      if (batch.size() == INSERT_BATCH_SIZE) {
+        insert(batch);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      insert(batch);
+    }
+    return to;
+  }
+
+  private void insert(List<Object[]> batch) {
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO inventory_items (product_id, quantity_available, quantity_reserved) "
+            + "VALUES (?, ?, 0)",
+        batch);
+  }
+
+  private void lookUpRandomProducts(int size, int lookups) {
+    for (int i = 0; i < lookups; i++) {
+      long productId = ThreadLocalRandom.current().nextLong(1, size + 1L);
+      assertThat(inventoryItemRepository.findByProductId(productId)).isPresent();
+    }
+  }
+}
@@ -1,26 +1,54 @@
 package com.scalableshop.productinventoryservice;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scalableshop.events.event.OrderCancelledEvent;
 import com.scalableshop.events.event.OrderCreatedEvent;
 import com.scalableshop.events.event.StockReservationFailedEvent;
 import com.scalableshop.events.event.StockReservedEvent;
 import com.scalableshop.productinventoryservice.model.InventoryItem;
 import com.scalableshop.productinventoryservice.model.ProcessedOrderEvent;
+import com.scalableshop.productinventoryservice.model.StockReservation;
+import com.scalableshop.productinventoryservice.model.OutboxMessage;
 import com.scalableshop.productinventoryservice.repository.InventoryItemRepository;
+import com.scalableshop.productinventoryservice.repository.OutboxMessageRepository;
+import com.scalableshop.productinventoryservice.repository.StockReservationRepository;
 import com.scalableshop.productinventoryservice.repository.ProcessedOrderEventRepository;
+import com.scalableshop.productinventoryservice.service.HotStockLedger;
 import com.scalableshop.productinventoryservice.service.InventoryService;
+import com.scalableshop.productinventoryservice.service.InventorySnapshotCache;
+import com.scalableshop.productinventoryservice.service.OrderEventIdempotency;
+import com.scalableshop.productinventoryservice.service.ReservationPolicy;
+import com.scalableshop.productinventoryservice.service.StockAdjustmentCoalescer;
+import com.scalableshop.productinventoryservice.service.StockEventRelayer;
+import com.scalableshop.productinventoryservice.service.StockImportService;
+import com.scalableshop.productinventoryservice.service.StockReservationHelper;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.messaging.Message;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.ByteArrayInputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -36,6 +64,26 @@ public class ProductInventoryServiceIntegrationTest {
 
   @Autowired private ProcessedOrderEventRepository processedOrderEventRepository;
 
+  @Autowired private OrderEventIdempotency orderEventIdempotency;
+
+  @Autowired private StockReservationHelper stockReservationHelper;
+
+  @Autowired private OutboxMessageRepository outboxMessageRepository;
+
+  @Autowired private StockEventRelayer stockEventRelayer;
+
+  @Autowired private StockReservationRepository stockReservationRepository;
+
+  @Autowired private StockImportService stockImportService;
+
+  @Autowired private ObjectMapper objectMapper;
+
+  @Autowired private InventorySnapshotCache inventorySnapshotCache;
+
+  @Autowired private HotStockLedger hotStockLedger;
+
+  @Autowired private TransactionTemplate transactionTemplate;
+
   @MockBean // Mock StreamBridge to verify published events without real broker interaction
   private StreamBridge streamBridge;
 
@@ -44,8 +92,13 @@ public class ProductInventoryServiceIntegrationTest {
     // Clean up repositories before each test to ensure a clean state
     inventoryItemRepository.deleteAll();
     processedOrderEventRepository.deleteAll();
-    // Reset mock interactions before each test
+    // The recently processed orders cached in memory would outlive the table cleanup
+    orderEventIdempotency.clearRecent();
+    outboxMessageRepository.deleteAll();
+    stockReservationRepository.deleteAll();
+    // Reset mock interactions before each test; the binder accepts every message by default
     reset(streamBridge);
+    when(streamBridge.send(anyString(), any())).thenReturn(true);
   }
 
   @Test
@@ -64,7 +117,8 @@ public class ProductInventoryServiceIntegrationTest {
             productId, requestedQuantity, orderId, customerId);
 
     // Act
-    inventoryService.orderCreatedEventConsumer().accept(orderCreatedEventFromOrderService);
+    inventoryService.orderCreatedEventConsumer().accept(List.of(orderCreatedEventFromOrderService));
+    stockEventRelayer.relay();
 
     // Assert
     verifyInventoryWasUpdated(productId, initialStock, requestedQuantity);
@@ -92,7 +146,8 @@ public class ProductInventoryServiceIntegrationTest {
     prepareTheOrderIsProcessedBefore(orderId);
 
     // Act
-    inventoryService.orderCreatedEventConsumer().accept(orderCreatedEventFromOrderService);
+    inventoryService.orderCreatedEventConsumer().accept(List.of(orderCreatedEventFromOrderService));
+    stockEventRelayer.relay();
 
     // Assert
     verifyInventoryWasNotUpdated(productId, initialStock);
@@ -120,22 +175,32 @@ public class ProductInventoryServiceIntegrationTest {
             productId, requestedQuantity, orderId, customerId);
 
     // When
-    // Manually call the consumer bean. The consumer's subscribe will hit the error block.
-    inventoryService.orderCreatedEventConsumer().accept(orderCreatedEventFromOrderService);
+    // Manually call the consumer bean, then relay the outbox
+    inventoryService.orderCreatedEventConsumer().accept(List.of(orderCreatedEventFromOrderService));
+    stockEventRelayer.relay();
 
-    // Verify InventoryItem quantity remains unchanged due to transactional rollback
+    // Verify InventoryItem quantity remains unchanged
     verifyInventoryWasNotUpdated(productId, initialStock);
 
-    // Verify ProcessedOrderEvent was NOT saved due to transactional rollback
-    Optional<ProcessedOrderEvent> processedEvent =
-        processedOrderEventRepository.findByOrderId(orderId);
-    assertThat(processedEvent).isNotPresent();
+    // Verify ProcessedOrderEvent was saved with the failure event
+    verifyOrderWasSavedInProcessedOrderTable(orderId);
 
     // Verify StockReservationFailedEvent was published
     verify(streamBridge, timeout(500).times(1))
         .send(
             eq("stockReservationFailedEventProducer-out-0"),
-            any(StockReservationFailedEvent.class));
+            eventOfType("StockReservationFailedEvent"));
+    verifyStockReservedEventWasNotPublished();
+
+    // A redelivery after a restock does not reserve stock for the order that already failed
+    initializeStock(productId, 10);
+    inventoryService.orderCreatedEventConsumer().accept(List.of(orderCreatedEventFromOrderService));
+    stockEventRelayer.relay();
+    verifyInventoryWasNotUpdated(productId, 10);
+    verify(streamBridge, times(1))
+        .send(
+            eq("stockReservationFailedEventProducer-out-0"),
+            eventOfType("StockReservationFailedEvent"));
     verifyStockReservedEventWasNotPublished();
   }
 
@@ -156,22 +221,601 @@ public class ProductInventoryServiceIntegrationTest {
             nonExistentProductId, requestedQuantity, orderId, customerId);
 
     // When
-    inventoryService.orderCreatedEventConsumer().accept(orderCreatedEventFromOrderService);
+    inventoryService.orderCreatedEventConsumer().accept(List.of(orderCreatedEventFromOrderService));
+    stockEventRelayer.relay();
 
     // Verify no InventoryItem was created or modified for the non-existent product
     assertThat(inventoryItemRepository.findByProductId(nonExistentProductId)).isNotPresent();
 
-    // Verify ProcessedOrderEvent was NOT saved due to transactional rollback
-    Optional<ProcessedOrderEvent> processedEvent =
-        processedOrderEventRepository.findByOrderId(orderId);
-    assertThat(processedEvent).isNotPresent();
+    // Verify ProcessedOrderEvent was saved with the failure event
+    verifyOrderWasSavedInProcessedOrderTable(orderId);
 
     // Verify StockReservationFailedEvent was published
     verify(streamBridge, timeout(500).times(1))
         .send(
             eq("stockReservationFailedEventProducer-out-0"),
-            any(StockReservationFailedEvent.class));
+            eventOfType("StockReservationFailedEvent"));
+    verifyStockReservedEventWasNotPublished();
+  }
+
+  @Test
+  void reserveStock_shouldNeverOversell_ConcurrentOrdersForSameProduct() throws Exception {
+    // Given
+    Long productId = 103L;
+    int initialStock = 5;
+    int concurrentOrders = 12;
+    initializeStock(productId, initialStock);
+    ExecutorService executor = Executors.newFixedThreadPool(concurrentOrders);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Boolean>> results = new ArrayList<>();
+
+    // When
+    for (int i = 0; i < concurrentOrders; i++) {
+      long orderId = 100L + i;
+      results.add(
+          executor.submit(
+              () -> {
+                start.await();
+                try {
+                  return stockReservationHelper.reserveStock(
+                      orderId, 20L, List.of(new OrderCreatedEvent.OrderItemEvent(productId, 1)));
+                } catch (RuntimeException e) {
+                  return false;
+                }
+              }));
+    }
+    start.countDown();
+    int reserved = 0;
+    for (Future<Boolean> result : results) {
+      if (result.get(30, TimeUnit.SECONDS)) {
+        reserved++;
+      }
+    }
+    executor.shutdown();
+    stockEventRelayer.relay();
+
+    // Then
+    assertThat(reserved).isEqualTo(initialStock);
+    InventoryItem item = inventoryItemRepository.findByProductId(productId).orElseThrow();
+    assertThat(item.getQuantityAvailable()).isZero();
+    assertThat(item.getQuantityReserved()).isEqualTo(initialStock);
+    verify(streamBridge, times(initialStock))
+        .send(eq("stockReservedEventProducer-out-0"), eventOfType("StockReservedEvent"));
+  }
+
+  @Test
+  void orderCreatedEventConsumer_shouldReserveBatchInArrivalOrder_CompetingAndDupOrders() {
+    // Given
+    Long productId = 104L;
+    int initialStock = 3;
+    int requestedQuantity = 2; // Only one of the two orders can be served
+    Long firstOrderId = 200L;
+    Long secondOrderId = 201L;
+    initializeStock(productId, initialStock);
+    OrderCreatedEvent firstOrder =
+        buildOrderCreatedEventReceivedFromOrderService(
+            productId, requestedQuantity, firstOrderId, 21L);
+    OrderCreatedEvent secondOrder =
+        buildOrderCreatedEventReceivedFromOrderService(
+            productId, requestedQuantity, secondOrderId, 22L);
+
+    // When
+    // The first order is redelivered within the same batch
+    inventoryService
+        .orderCreatedEventConsumer()
+        .accept(List.of(firstOrder, secondOrder, firstOrder));
+    stockEventRelayer.relay();
+
+    // Then
+    // The first order wins the stock; the second fails without undoing it
+    verifyInventoryWasUpdated(productId, initialStock, requestedQuantity);
+    verifyOrderWasSavedInProcessedOrderTable(firstOrderId);
+    verifyOrderWasSavedInProcessedOrderTable(secondOrderId);
+    assertThat(processedOrderEventRepository.count()).isEqualTo(2);
+    verify(streamBridge, times(1))
+        .send(
+            eq("stockReservedEventProducer-out-0"),
+            eventOfType("StockReservedEvent", firstOrderId));
+    verify(streamBridge, times(1))
+        .send(
+            eq("stockReservationFailedEventProducer-out-0"),
+            eventOfType("StockReservationFailedEvent", secondOrderId));
+  }
+
+  @Test
+  void stockEventRelayer_shouldKeepEventInOutboxUntilSent_SendFails() {
+    // Given
+    Long productId = 105L;
+    int initialStock = 4;
+    int requestedQuantity = 1;
+    Long orderId = 300L;
+    initializeStock(productId, initialStock);
+    doThrow(new RuntimeException("Broker unavailable"))
+        .when(streamBridge)
+        .send(eq("stockReservedEventProducer-out-0"), any());
+
+    // When
+    inventoryService
+        .orderCreatedEventConsumer()
+        .accept(
+            List.of(
+                buildOrderCreatedEventReceivedFromOrderService(
+                    productId, requestedQuantity, orderId, 23L)));
+
+    // Then
+    // The reservation commits together with its event, and nothing is sent before the relay runs
+    verifyInventoryWasUpdated(productId, initialStock, requestedQuantity);
     verifyStockReservedEventWasNotPublished();
+    assertThat(outboxMessageRepository.count()).isEqualTo(1);
+
+    // A failed send keeps the event in the outbox and schedules a retry
+    assertThat(stockEventRelayer.relay()).isZero();
+    List<OutboxMessage> pending = outboxMessageRepository.findAll();
+    assertThat(pending).hasSize(1);
+    assertThat(pending.get(0).getAttempts()).isEqualTo(1);
+    assertThat(pending.get(0).getLastError()).contains("Broker unavailable");
+    assertThat(pending.get(0).getNextAttemptAt()).isAfter(LocalDateTime.now());
+  }
+
+  @Test
+  void stockEventRelayer_shouldParkUnroutableEventAndHoldBackLaterEventsOfItsOrder() {
+    // Given
+    outboxMessageRepository.save(new OutboxMessage("900", "UnknownEvent", "{}"));
+    outboxMessageRepository.save(new OutboxMessage("900", "StockReservedEvent", "{}"));
+
+    // When
+    stockEventRelayer.relay();
+    stockEventRelayer.relay();
+
+    // Then
+    // The unknown event type is not retried, and the later event of the order is not sent past it
+    verify(streamBridge, never()).send(anyString(), any());
+    OutboxMessage parked =
+        outboxMessageRepository.findAll().stream()
+            .filter(message -> message.getEventType().equals("UnknownEvent"))
+            .findFirst()
+            .orElseThrow();
+    assertThat(parked.getParkedAt()).isNotNull();
+    assertThat(parked.getAttempts()).isEqualTo(1);
+    assertThat(outboxMessageRepository.count()).isEqualTo(2);
+  }
+
+  @Test
+  void orderCancelledEventConsumer_shouldReleaseReservedStock_CancelledAfterReserved() {
+    // Given
+    Long productId = 106L;
+    int initialStock = 10;
+    int requestedQuantity = 3;
+    Long orderId = 400L;
+    Long customerId = 24L;
+    initializeStock(productId, initialStock);
+    inventoryService
+        .orderCreatedEventConsumer()
+        .accept(
+            List.of(
+                buildOrderCreatedEventReceivedFromOrderService(
+                    productId, requestedQuantity, orderId, customerId)));
+    verifyInventoryWasUpdated(productId, initialStock, requestedQuantity);
+    assertThat(stockReservationRepository.findByOrderId(orderId))
+        .singleElement()
+        .satisfies(
+            reservation -> {
+              assertThat(reservation.getProductId()).isEqualTo(productId);
+              assertThat(reservation.getQuantity()).isEqualTo(requestedQuantity);
+            });
+
+    // When
+    // Redelivered cancellations release the stock once
+    OrderCancelledEvent cancelled =
+        new OrderCancelledEvent(orderId, customerId, "Cancelled by customer");
+    inventoryService.orderCancelledEventConsumer().accept(List.of(cancelled, cancelled));
+    inventoryService.orderCancelledEventConsumer().accept(List.of(cancelled));
+
+    // Then
+    verifyInventoryWasNotUpdated(productId, initialStock);
+    assertThat(stockReservationRepository.findByOrderId(orderId)).isEmpty();
+    // The cached snapshot was evicted, not left at the reserved level
+    assertThat(inventoryService.getInventoryByProductId(productId).block().getQuantityAvailable())
+        .isEqualTo(initialStock);
+  }
+
+  @Test
+  void orderCreatedEventConsumer_shouldNotReserveStock_CancelledBeforeReserved() {
+    // Given
+    Long productId = 107L;
+    int initialStock = 10;
+    Long orderId = 401L;
+    Long customerId = 25L;
+    initializeStock(productId, initialStock);
+
+    // When
+    // The cancellation overtakes the OrderCreatedEvent
+    inventoryService
+        .orderCancelledEventConsumer()
+        .accept(List.of(new OrderCancelledEvent(orderId, customerId, "Cancelled by customer")));
+    inventoryService
+        .orderCreatedEventConsumer()
+        .accept(
+            List.of(
+                buildOrderCreatedEventReceivedFromOrderService(productId, 2, orderId, customerId)));
+
+    // Then
+    verifyInventoryWasNotUpdated(productId, initialStock);
+    assertThat(stockReservationRepository.findByOrderId(orderId)).isEmpty();
+    assertThat(outboxMessageRepository.count()).isZero();
+  }
+
+  @Test
+  void consumers_shouldFallBackToOneOrderAtATime_AndRethrow_WhenBatchFails() {
+    // Given
+    Long productId = 127L;
+    Long orderId = 403L;
+    Long brokenOrderId = 404L;
+    Long customerId = 28L;
+    initializeStock(productId, 10);
+    // No items at all: reserving this order throws, which fails the whole batch transaction
+    OrderCreatedEvent brokenOrder =
+        new OrderCreatedEvent(
+            brokenOrderId, customerId, LocalDateTime.now(), BigDecimal.ZERO, null);
+    OrderCreatedEvent order =
+        buildOrderCreatedEventReceivedFromOrderService(productId, 3, orderId, customerId);
+
+    // When / Then
+    // The good order is still reserved; the failure is rethrown so the binder redelivers
+    assertThatThrownBy(
+            () -> inventoryService.orderCreatedEventConsumer().accept(List.of(brokenOrder, order)))
+        .isInstanceOf(NullPointerException.class);
+    verifyInventoryWasUpdated(productId, 10, 3);
+    verifyOrderWasSavedInProcessedOrderTable(orderId);
+    assertThat(outboxEvent(orderId, StockReservedEvent.class).getOrderId()).isEqualTo(orderId);
+    assertThat(processedOrderEventRepository.findByOrderId(brokenOrderId)).isNotPresent();
+
+    // Likewise for cancellations: an event without an order ID does not cost the others
+    assertThatThrownBy(
+            () ->
+                inventoryService
+                    .orderCancelledEventConsumer()
+                    .accept(
+                        List.of(
+                            new OrderCancelledEvent(null, customerId, "Broken"),
+                            new OrderCancelledEvent(orderId, customerId, "Cancelled by customer"))))
+        .isInstanceOf(NullPointerException.class);
+    verifyInventoryWasNotUpdated(productId, 10);
+    assertThat(stockReservationRepository.findByOrderId(orderId)).isEmpty();
+  }
+
+  @Test
+  void initializeStock_shouldKeepOpenReservations_ReleasedAfterRestock() {
+    // Given
+    Long productId = 123L;
+    int requestedQuantity = 3;
+    Long orderId = 402L;
+    Long customerId = 27L;
+    initializeStock(productId, 10);
+    inventoryService
+        .orderCreatedEventConsumer()
+        .accept(
+            List.of(
+                buildOrderCreatedEventReceivedFromOrderService(
+                    productId, requestedQuantity, orderId, customerId)));
+
+    // When
+    // Restocking sets the available units only; the open reservation stays reserved
+    initializeStock(productId, 20);
+    InventoryItem restocked = inventoryItemRepository.findByProductId(productId).orElseThrow();
+    inventoryService
+        .orderCancelledEventConsumer()
+        .accept(List.of(new OrderCancelledEvent(orderId, customerId, "Cancelled by customer")));
+
+    // Then
+    assertThat(restocked.getQuantityReserved()).isEqualTo(requestedQuantity);
+    verifyInventoryWasNotUpdated(productId, 20 + requestedQuantity);
+    assertThat(stockReservationRepository.findByOrderId(orderId)).isEmpty();
+  }
+
+  @Test
+  void getInventoryByProductIds_shouldServeSnapshotsUpdatedByReservation() {
+    // Given
+    Long productId = 108L;
+    Long otherProductId = 109L;
+    Long unknownProductId = 998L;
+    initializeStock(productId, 10);
+    initializeStock(otherProductId, 5);
+    InventorySnapshotCache.Stats before = inventoryService.getInventoryCacheStats();
+
+    // When
+    inventoryService
+        .orderCreatedEventConsumer()
+        .accept(List.of(buildOrderCreatedEventReceivedFromOrderService(productId, 4, 500L, 26L)));
+    List<InventoryItem> stock =
+        inventoryService
+            .getInventoryByProductIds(List.of(productId, unknownProductId, otherProductId))
+            .block();
+
+    // Then
+    assertThat(stock)
+        .extracting(InventoryItem::getProductId)
+        .containsExactly(productId, otherProductId);
+    assertThat(stock.get(0).getQuantityAvailable()).isEqualTo(6);
+    assertThat(stock.get(0).getQuantityReserved()).isEqualTo(4);
+    assertThat(stock.get(1).getQuantityAvailable()).isEqualTo(5);
+    // Both snapshots were put by the writes themselves; only the unknown product was looked up
+    InventorySnapshotCache.Stats after = inventoryService.getInventoryCacheStats();
+    assertThat(after.getHits() - before.getHits()).isEqualTo(2);
+    assertThat(after.getMisses() - before.getMisses()).isEqualTo(1);
+  }
+
+  @Test
+  void importStock_shouldUpsertStockInChunks_CsvWithInvalidLines() {
+    // Given
+    // Product 110 exists and has 3 units reserved
+    initializeStock(110L, 10);
+    inventoryService
+        .orderCreatedEventConsumer()
+        .accept(List.of(buildOrderCreatedEventReceivedFromOrderService(110L, 3, 600L, 27L)));
+    String csv =
+        "productId,quantity\n"
+            + "110,50\n"
+            + "111,20\n"
+            + "not-a-number,5\n"
+            + "112,-1\n"
+            + "\n"
+            + "111,25\n"
+            + "113,0\n";
+
+    // When
+    StockImportService.ImportProgress progress =
+        stockImportService.importStock(
+            new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+            StockImportService.Format.CSV);
+
+    // Then
+    assertThat(progress.getStatus()).isEqualTo(StockImportService.Status.COMPLETED);
+    assertThat(progress.getLinesRead()).isEqualTo(6);
+    assertThat(progress.getLinesRejected()).isEqualTo(2);
+    assertThat(progress.getErrors()).hasSize(2);
+    assertThat(progress.getErrors().get(0)).startsWith("Line 4:");
+    assertThat(progress.getChunksCommitted()).isEqualTo(2);
+    assertThat(progress.getProductsWritten()).isEqualTo(4);
+    assertThat(stockImportService.getImports()).extracting("id").contains(progress.getId());
+
+    // The available quantity is replaced; the reservation of order 600 is kept
+    InventoryItem existing = inventoryItemRepository.findByProductId(110L).orElseThrow();
+    assertThat(existing.getQuantityAvailable()).isEqualTo(50);
+    assertThat(existing.getQuantityReserved()).isEqualTo(3);
+    // The later line of a product wins
+    assertThat(inventoryItemRepository.findByProductId(111L).orElseThrow().getQuantityAvailable())
+        .isEqualTo(25);
+    assertThat(inventoryItemRepository.findByProductId(112L)).isNotPresent();
+    assertThat(inventoryItemRepository.findByProductId(113L).orElseThrow().getQuantityAvailable())
+        .isZero();
+    // The snapshot cached by the reservation was evicted
+    assertThat(inventoryService.getInventoryByProductId(110L).block().getQuantityAvailable())
+        .isEqualTo(50);
+  }
+
+  @Test
+  void importStock_shouldCreateProducts_Ndjson() {
+    // Given
+    String ndjson = "{\"productId\":114,\"quantity\":7}\n{\"productId\":115}\n";
+
+    // When
+    StockImportService.ImportProgress progress =
+        stockImportService.importStock(
+            new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)),
+            StockImportService.Format.NDJSON);
+
+    // Then
+    assertThat(progress.getStatus()).isEqualTo(StockImportService.Status.COMPLETED);
+    assertThat(progress.getProductsWritten()).isEqualTo(1);
+    assertThat(progress.getErrors()).containsExactly("Line 2: Missing or invalid quantity");
+    InventoryItem created = inventoryItemRepository.findByProductId(114L).orElseThrow();
+    assertThat(created.getQuantityAvailable()).isEqualTo(7);
+    assertThat(created.getQuantityReserved()).isZero();
+  }
+
+  @Test
+  void applyAdjustments_shouldMergeConcurrentDeltas_AndRejectOnlyThoseThatDoNotFit()
+      throws Exception {
+    // Given
+    Long productId = 116L;
+    Long scarceProductId = 117L;
+    Long unknownProductId = 118L;
+    initializeStock(productId, 10);
+    initializeStock(scarceProductId, 2);
+    int concurrentRequests = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(concurrentRequests);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<List<StockAdjustmentCoalescer.AdjustmentResult>>> results = new ArrayList<>();
+
+    // When
+    for (int i = 0; i < concurrentRequests; i++) {
+      results.add(
+          executor.submit(
+              () -> {
+                start.await();
+                return inventoryService
+                    .applyAdjustments(
+                        List.of(new StockAdjustmentCoalescer.Adjustment(productId, 5)))
+                    .block();
+              }));
+    }
+    start.countDown();
+    for (Future<List<StockAdjustmentCoalescer.AdjustmentResult>> result : results) {
+      assertThat(result.get(30, TimeUnit.SECONDS))
+          .extracting(StockAdjustmentCoalescer.AdjustmentResult::getOutcome)
+          .containsExactly(StockAdjustmentCoalescer.Outcome.APPLIED);
+    }
+    executor.shutdown();
+    List<StockAdjustmentCoalescer.AdjustmentResult> mixed =
+        inventoryService
+            .applyAdjustments(
+                List.of(
+                    new StockAdjustmentCoalescer.Adjustment(scarceProductId, -2),
+                    new StockAdjustmentCoalescer.Adjustment(unknownProductId, 4),
+                    new StockAdjustmentCoalescer.Adjustment(scarceProductId, -2),
+                    new StockAdjustmentCoalescer.Adjustment(scarceProductId, 1)))
+            .block();
+
+    // Then
+    assertThat(
+            inventoryItemRepository.findByProductId(productId).orElseThrow().getQuantityAvailable())
+        .isEqualTo(10 + 5 * concurrentRequests);
+    // The merged delta of -3 does not fit the 2 available, so the second withdrawal is rejected
+    assertThat(mixed)
+        .extracting(StockAdjustmentCoalescer.AdjustmentResult::getOutcome)
+        .containsExactly(
+            StockAdjustmentCoalescer.Outcome.APPLIED,
+            StockAdjustmentCoalescer.Outcome.PRODUCT_NOT_FOUND,
+            StockAdjustmentCoalescer.Outcome.INSUFFICIENT_STOCK,
+            StockAdjustmentCoalescer.Outcome.APPLIED);
+    assertThat(
+            inventoryItemRepository
+                .findByProductId(scarceProductId)
+                .orElseThrow()
+                .getQuantityAvailable())
+        .isEqualTo(1);
+    assertThat(inventoryItemRepository.findByProductId(unknownProductId)).isEmpty();
+    // The cached snapshot was evicted
+    assertThat(inventoryService.getInventoryByProductId(productId).block().getQuantityAvailable())
+        .isEqualTo(10 + 5 * concurrentRequests);
+  }
+
+  @Test
+  void stockAdjustmentCoalescer_shouldIsolateFailingProduct_AndApplyQueuedOnShutdown()
+      throws Exception {
+    // Given
+    Long overflowingProductId = 124L;
+    Long productId = 125L;
+    Long wrappingProductId = 126L;
+    initializeStock(overflowingProductId, Integer.MAX_VALUE - 1);
+    initializeStock(productId, 10);
+    initializeStock(wrappingProductId, 10);
+    // A window far longer than the test, so only the shutdown applies the adjustments
+    StockAdjustmentCoalescer coalescer =
+        new StockAdjustmentCoalescer(
+            inventoryItemRepository,
+            inventorySnapshotCache,
+            hotStockLedger,
+            transactionTemplate,
+            3_600_000);
+    CompletableFuture<List<StockAdjustmentCoalescer.AdjustmentResult>> overflowing =
+        coalescer.submit(List.of(new StockAdjustmentCoalescer.Adjustment(overflowingProductId, 5)));
+    // The two withdrawals of the wrapping product add up to more than an int can hold
+    CompletableFuture<List<StockAdjustmentCoalescer.AdjustmentResult>> others =
+        coalescer.submit(
+            List.of(
+                new StockAdjustmentCoalescer.Adjustment(productId, 3),
+                new StockAdjustmentCoalescer.Adjustment(wrappingProductId, Integer.MIN_VALUE),
+                new StockAdjustmentCoalescer.Adjustment(wrappingProductId, -1)));
+
+    // When
+    coalescer.shutdown();
+
+    // Then
+    // Only the product whose stock would overflow fails; the others of the window are applied
+    assertThat(overflowing).isCompletedExceptionally();
+    assertThat(others.get(5, TimeUnit.SECONDS))
+        .extracting(StockAdjustmentCoalescer.AdjustmentResult::getOutcome)
+        .containsExactly(
+            StockAdjustmentCoalescer.Outcome.APPLIED,
+            StockAdjustmentCoalescer.Outcome.INSUFFICIENT_STOCK,
+            StockAdjustmentCoalescer.Outcome.APPLIED);
+    assertThat(
+            inventoryItemRepository
+                .findByProductId(overflowingProductId)
+                .orElseThrow()
+                .getQuantityAvailable())
+        .isEqualTo(Integer.MAX_VALUE - 1);
+    assertThat(
+            inventoryItemRepository.findByProductId(productId).orElseThrow().getQuantityAvailable())
+        .isEqualTo(13);
+    assertThat(
+            inventoryItemRepository
+                .findByProductId(wrappingProductId)
+                .orElseThrow()
+                .getQuantityAvailable())
+        .isEqualTo(9);
+    // Adjustments submitted after the shutdown are refused instead of left waiting
+    assertThat(coalescer.submit(List.of(new StockAdjustmentCoalescer.Adjustment(productId, 1))))
+        .isCompletedExceptionally();
+  }
+
+  @Test
+  void reserveStockBatch_shouldReserveWhatIsInStock_PartialPolicy() {
+    // Given
+    Long productId = 119L;
+    Long soldOutProductId = 120L;
+    Long partialOrderId = 700L;
+    Long soldOutOrderId = 701L;
+    initializeStock(productId, 3);
+    initializeStock(soldOutProductId, 0);
+    OrderCreatedEvent partialOrder =
+        new OrderCreatedEvent(
+            partialOrderId,
+            70L,
+            LocalDateTime.now(),
+            BigDecimal.valueOf(70.0),
+            List.of(
+                new OrderCreatedEvent.OrderItemEvent(productId, 5),
+                new OrderCreatedEvent.OrderItemEvent(soldOutProductId, 2)));
+    OrderCreatedEvent soldOutOrder =
+        buildOrderCreatedEventReceivedFromOrderService(soldOutProductId, 1, soldOutOrderId, 71L);
+
+    // When
+    int reserved =
+        stockReservationHelper.reserveStockBatch(
+            List.of(partialOrder, soldOutOrder), ReservationPolicy.PARTIAL);
+
+    // Then
+    // The order with something in stock gets it; the one with nothing in stock fails
+    assertThat(reserved).isEqualTo(1);
+    verifyInventoryWasUpdated(productId, 3, 3);
+    verifyInventoryWasNotUpdated(soldOutProductId, 0);
+    verifyOrderWasSavedInProcessedOrderTable(partialOrderId);
+    verifyOrderWasSavedInProcessedOrderTable(soldOutOrderId);
+    assertThat(stockReservationRepository.findByOrderId(partialOrderId))
+        .extracting(StockReservation::getProductId, StockReservation::getQuantity)
+        .containsExactly(tuple(productId, 3));
+    StockReservedEvent event = outboxEvent(partialOrderId, StockReservedEvent.class);
+    assertThat(event.getFulfilment()).isEqualTo(StockReservedEvent.Fulfilment.PARTIAL);
+    // The sold out item is dropped from the order, so it is not listed
+    assertThat(event.getReservedItems())
+        .containsExactly(new StockReservedEvent.ReservedItem(productId, 3, 5, 0));
+    assertThat(outboxEvent(soldOutOrderId, StockReservationFailedEvent.class).getReason())
+        .startsWith("No stock available for any item");
+  }
+
+  @Test
+  void reserveStockBatch_shouldBackorderWhatIsNotInStock_BackorderPolicy() {
+    // Given
+    Long productId = 121L;
+    Long unknownProductId = 122L;
+    Long backorderedOrderId = 702L;
+    Long unknownProductOrderId = 703L;
+    initializeStock(productId, 1);
+    OrderCreatedEvent backorderedOrder =
+        buildOrderCreatedEventReceivedFromOrderService(productId, 4, backorderedOrderId, 72L);
+    OrderCreatedEvent unknownProductOrder =
+        buildOrderCreatedEventReceivedFromOrderService(
+            unknownProductId, 1, unknownProductOrderId, 73L);
+
+    // When
+    int reserved =
+        stockReservationHelper.reserveStockBatch(
+            List.of(backorderedOrder, unknownProductOrder), ReservationPolicy.BACKORDER);
+
+    // Then
+    assertThat(reserved).isEqualTo(1);
+    verifyInventoryWasUpdated(productId, 1, 1);
+    verifyOrderWasSavedInProcessedOrderTable(backorderedOrderId);
+    verifyOrderWasSavedInProcessedOrderTable(unknownProductOrderId);
+    StockReservedEvent event = outboxEvent(backorderedOrderId, StockReservedEvent.class);
+    assertThat(event.getFulfilment()).isEqualTo(StockReservedEvent.Fulfilment.BACKORDERED);
+    assertThat(event.getReservedItems())
+        .containsExactly(new StockReservedEvent.ReservedItem(productId, 1, 4, 3));
+    assertThat(outboxEvent(unknownProductOrderId, StockReservationFailedEvent.class).getReason())
+        .startsWith("Unknown products");
   }
 
   private void initializeStock(Long productId, int initialStock) {
@@ -219,7 +863,7 @@ public class ProductInventoryServiceIntegrationTest {
 
   private void verifyStockReservedEventWasPublished() {
     verify(streamBridge, timeout(500).times(1))
-        .send(eq("stockReservedEventProducer-out-0"), any(StockReservedEvent.class));
+        .send(eq("stockReservedEventProducer-out-0"), eventOfType("StockReservedEvent"));
   }
 
   private void prepareTheOrderIsProcessedBefore(Long orderId) {
@@ -239,6 +883,39 @@ public class ProductInventoryServiceIntegrationTest {
     assertThat(updatedItem.get().getQuantityReserved()).isEqualTo(0);
   }
 
+  // Matches a relayed outbox message by its event type header
+  private static Object eventOfType(String eventType) {
+    return ArgumentMatchers.<Object>argThat(
+        message ->
+            message instanceof Message<?> relayed
+                && eventType.equals(relayed.getHeaders().get(StockEventRelayer.EVENT_TYPE_HEADER)));
+  }
+
+  private static Object eventOfType(String eventType, Long orderId) {
+    return ArgumentMatchers.<Object>argThat(
+        message ->
+            message instanceof Message<?> relayed
+                && eventType.equals(relayed.getHeaders().get(StockEventRelayer.EVENT_TYPE_HEADER))
+                && orderId
+                    .toString()
+                    .equals(relayed.getHeaders().get(StockEventRelayer.AGGREGATE_ID_HEADER)));
+  }
+
+  // Reads back the stock event added to the outbox for the order
+  private <T> T outboxEvent(Long orderId, Class<T> eventType) {
+    String payload =
+        outboxMessageRepository.findAll().stream()
+            .filter(message -> message.getAggregateId().equals(orderId.toString()))
+            .map(OutboxMessage::getPayload)
+            .findFirst()
+            .orElseThrow();
+    try {
+      return objectMapper.readValue(payload, eventType);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   private void verifyStockReservedEventWasNotPublished() {
     verify(streamBridge, never()).send(eq("stockReservedEventProducer-out-0"), any());
   }
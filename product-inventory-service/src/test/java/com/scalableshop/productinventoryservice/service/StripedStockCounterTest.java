@@ -0,0 +1,80 @@
+package com.scalableshop.productinventoryservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripedStockCounterTest {
+
+  @Test
+  void tryTake_shouldCombineStripes_whenNoSingleStripeHasEnough() {
+    // Given
+    StripedStockCounter counter = new StripedStockCounter(4, 10);
+
+    // When / Then
+    assertThat(counter.tryTake(7)).isTrue();
+    assertThat(counter.available()).isEqualTo(3);
+    assertThat(counter.tryTake(4)).isFalse();
+    assertThat(counter.available()).isEqualTo(3);
+  }
+
+  @Test
+  void release_shouldReturnUnits() {
+    // Given
+    StripedStockCounter counter = new StripedStockCounter(4, 2);
+    assertThat(counter.tryTake(2)).isTrue();
+
+    // When
+    counter.release(2);
+
+    // Then
+    assertThat(counter.available()).isEqualTo(2);
+    assertThat(counter.tryTake(2)).isTrue();
+  }
+
+  @Test
+  void tryTake_shouldNeverOversell_concurrentTakes() throws Exception {
+    // Given
+    int stock = 1_000;
+    int threads = 8;
+    int attemptsPerThread = 250;
+    StripedStockCounter counter = new StripedStockCounter(threads, stock);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Integer>> results = new ArrayList<>();
+
+    // When
+    for (int t = 0; t < threads; t++) {
+      results.add(
+          executor.submit(
+              () -> {
+                start.await();
+                int taken = 0;
+                for (int i = 0; i < attemptsPerThread; i++) {
+                  if (counter.tryTake(1 + i % 3)) {
+                    taken += 1 + i % 3;
+                  }
+                }
+                return taken;
+              }));
+    }
+    start.countDown();
+    int taken = 0;
+    for (Future<Integer> result : results) {
+      taken += result.get(30, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    // Then
+    assertThat(taken + counter.available()).isEqualTo(stock);
+    assertThat(counter.available()).isLessThan(3);
+  }
+}
@@ -0,0 +1,76 @@
+package com.scalableshop.productinventoryservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimerWheelTest {
+
+  @Test
+  void advance_shouldReturnItemsOnlyOnceDue() {
+    // Given
+    TimerWheel<Long> wheel = new TimerWheel<>(8, 100, 0);
+    wheel.schedule(1L, 250);
+    wheel.schedule(2L, 500);
+
+    // When / Then
+    assertThat(wheel.advance(200)).isEmpty();
+    assertThat(wheel.advance(300)).containsExactly(1L);
+    assertThat(wheel.advance(400)).isEmpty();
+    assertThat(wheel.advance(500)).containsExactly(2L);
+    assertThat(wheel.size()).isZero();
+  }
+
+  @Test
+  void advance_shouldKeepItemsDueInLaterRevolutions() {
+    // Given
+    // 4 slots of 100 ms: deadlines 100 and 500 share a slot
+    TimerWheel<Long> wheel = new TimerWheel<>(4, 100, 0);
+    wheel.schedule(1L, 100);
+    wheel.schedule(2L, 500);
+
+    // When / Then
+    assertThat(wheel.advance(100)).containsExactly(1L);
+    assertThat(wheel.advance(400)).isEmpty();
+    assertThat(wheel.advance(500)).containsExactly(2L);
+  }
+
+  @Test
+  void advance_shouldReturnAllOverdueItems_AfterPauseLongerThanOneRevolution() {
+    // Given
+    TimerWheel<Long> wheel = new TimerWheel<>(4, 100, 0);
+    wheel.schedule(1L, 100);
+    wheel.schedule(2L, 300);
+    wheel.schedule(3L, 2000);
+
+    // When / Then
+    assertThat(wheel.advance(1000)).containsExactlyInAnyOrder(1L, 2L);
+    assertThat(wheel.size()).isEqualTo(1);
+    assertThat(wheel.advance(2000)).containsExactly(3L);
+  }
+
+  @Test
+  void cancel_shouldRemoveScheduledItem() {
+    // Given
+    TimerWheel<Long> wheel = new TimerWheel<>(8, 100, 0);
+    wheel.schedule(1L, 200);
+
+    // When / Then
+    assertThat(wheel.cancel(1L)).isTrue();
+    assertThat(wheel.cancel(1L)).isFalse();
+    assertThat(wheel.advance(1000)).isEmpty();
+  }
+
+  @Test
+  void schedule_shouldMakeItemDueOnNextTick_WhenDeadlineHasPassed() {
+    // Given
+    TimerWheel<Long> wheel = new TimerWheel<>(8, 100, 0);
+    assertThat(wheel.advance(500)).isEmpty();
+
+    // When
+    wheel.schedule(1L, 100);
+
+    // Then
+    assertThat(wheel.advance(600)).containsExactly(1L);
+  }
+}
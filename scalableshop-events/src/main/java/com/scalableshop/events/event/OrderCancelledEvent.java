@@ -0,0 +1,25 @@
+package com.scalableshop.events.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderCancelledEvent {
+  private Long orderId;
+  private Long customerId;
+  private LocalDateTime eventTimestamp;
+  private String reason;
+
+  // Constructor to easily create the event
+  public OrderCancelledEvent(Long orderId, Long customerId, String reason) {
+    this.orderId = orderId;
+    this.customerId = customerId;
+    this.eventTimestamp = LocalDateTime.now();
+    this.reason = reason;
+  }
+}
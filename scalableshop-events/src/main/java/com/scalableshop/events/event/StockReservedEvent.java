@@ -15,6 +15,13 @@ public class StockReservedEvent {
   private Long customerId; // Useful for order service to identify the order
   private LocalDateTime eventTimestamp;
   private List<ReservedItem> reservedItems;
+  private Fulfilment fulfilment; // Whether every requested unit was reserved
+
+  public enum Fulfilment {
+    COMPLETE, // Every requested unit is reserved
+    PARTIAL, // Units not in stock were dropped from the order; dropped items are not listed
+    BACKORDERED // Units not in stock are backordered and shipped once restocked
+  }
 
   @Data
   @NoArgsConstructor
@@ -22,13 +29,26 @@ public class StockReservedEvent {
   public static class ReservedItem {
     private Long productId;
     private Integer quantityReserved;
+    private Integer quantityRequested;
+    private Integer quantityBackordered;
+
+    // Constructor for an item reserved in full
+    public ReservedItem(Long productId, Integer quantityReserved) {
+      this(productId, quantityReserved, quantityReserved, 0);
+    }
   }
 
   // Constructor to easily create the event
   public StockReservedEvent(Long orderId, Long customerId, List<ReservedItem> reservedItems) {
+    this(orderId, customerId, reservedItems, Fulfilment.COMPLETE);
+  }
+
+  public StockReservedEvent(
+      Long orderId, Long customerId, List<ReservedItem> reservedItems, Fulfilment fulfilment) {
     this.orderId = orderId;
     this.customerId = customerId;
     this.eventTimestamp = LocalDateTime.now();
     this.reservedItems = reservedItems;
+    this.fulfilment = fulfilment;
   }
 }